@@ -0,0 +1,100 @@
+package fr.emse.etu.cloud.common;
+
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsClientBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Long-lived S3 and SQS clients shared by all the helpers of an application.
+ * <p>
+ * Each client is built on first use and then reused by every call, from any thread, so that its HTTP connections are
+ * pooled and kept alive instead of opening a new connection and TLS session for each request. The clients are closed
+ * by a shutdown hook when the application exits.
+ * <p>
+ * The connection pool is set with system properties, given as `java -D&lt;property&gt;=&lt;value&gt;`:
+ * <ul>
+ * <li>`clients.maxConnections`: maximum number of open connections of each client (default 50),</li>
+ * <li>`clients.connectionMaxIdleMillis`: time after which an idle connection is closed (default 60000),</li>
+ * <li>`clients.connectionTimeToLiveMillis`: maximum lifetime of a connection, 0 for no limit (default 0),</li>
+ * <li>`clients.tcpKeepAlive`: whether TCP keep-alive probes are sent on idle connections (default true),</li>
+ * <li>`clients.endpoint`: URL of an S3 and SQS compatible service to use instead of AWS, such as a local one.</li>
+ * </ul>
+ */
+public final class AwsClients {
+    public static final int MAX_CONNECTIONS = Integer.getInteger("clients.maxConnections", 50);
+    public static final long CONNECTION_MAX_IDLE_MILLIS = Long.getLong("clients.connectionMaxIdleMillis", 60_000);
+    public static final long CONNECTION_TIME_TO_LIVE_MILLIS = Long.getLong("clients.connectionTimeToLiveMillis", 0);
+    public static final boolean TCP_KEEP_ALIVE = Boolean.parseBoolean(System.getProperty("clients.tcpKeepAlive", "true"));
+    public static final String ENDPOINT = System.getProperty("clients.endpoint");
+
+    private static S3Client s3Client;
+    private static SqsClient sqsClient;
+    private static boolean shutdownHookAdded;
+
+    private AwsClients() {
+    }
+
+    /**
+     * @return the S3 client of the application, which must not be closed
+     */
+    public static synchronized S3Client s3() {
+        if (s3Client == null) {
+            S3ClientBuilder builder = S3Client.builder().httpClient(httpClient());
+            if (ENDPOINT != null)
+                // Local S3 services do not serve buckets as sub-domains
+                builder.endpointOverride(URI.create(ENDPOINT)).forcePathStyle(true);
+            s3Client = builder.build();
+            addShutdownHook();
+        }
+        return s3Client;
+    }
+
+    /**
+     * @return the SQS client of the application, which must not be closed
+     */
+    public static synchronized SqsClient sqs() {
+        if (sqsClient == null) {
+            SqsClientBuilder builder = SqsClient.builder().httpClient(httpClient());
+            if (ENDPOINT != null)
+                builder.endpointOverride(URI.create(ENDPOINT));
+            sqsClient = builder.build();
+            addShutdownHook();
+        }
+        return sqsClient;
+    }
+
+    /**
+     * Closes the clients and their connections. Clients requested afterwards are built again.
+     */
+    public static synchronized void close() {
+        if (s3Client != null)
+            s3Client.close();
+        if (sqsClient != null)
+            sqsClient.close();
+        s3Client = null;
+        sqsClient = null;
+    }
+
+    private static SdkHttpClient httpClient() {
+        // Each client owns its HTTP client, which is closed with it
+        return ApacheHttpClient.builder()
+                .maxConnections(MAX_CONNECTIONS)
+                .connectionMaxIdleTime(Duration.ofMillis(CONNECTION_MAX_IDLE_MILLIS))
+                .connectionTimeToLive(Duration.ofMillis(CONNECTION_TIME_TO_LIVE_MILLIS))
+                .tcpKeepAlive(TCP_KEEP_ALIVE)
+                .build();
+    }
+
+    private static void addShutdownHook() {
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(AwsClients::close, "aws-clients-shutdown"));
+            shutdownHookAdded = true;
+        }
+    }
+}
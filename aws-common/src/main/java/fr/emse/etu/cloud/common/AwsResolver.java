@@ -0,0 +1,182 @@
+package fr.emse.etu.cloud.common;
+
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache of the queue URLs and of the buckets known to exist, shared by all the helpers of an application.
+ * <p>
+ * Queues and buckets practically never change while an application runs, so a queue URL is requested once and a
+ * bucket is checked once, instead of before every request. An entry is kept for `clients.resolverTtlMillis` ms
+ * (default 300000), and is removed as soon as a request fails because its queue or bucket no longer exists, in which
+ * case the request is sent once more after resolving the queue or checking the bucket again, so that a queue or a
+ * bucket deleted and created again by another application is found at once. Only queues and buckets found to exist
+ * are cached, so that one created by another application is found at once.
+ */
+public final class AwsResolver {
+    public static final long TTL_MILLIS = Long.getLong("clients.resolverTtlMillis", 300_000);
+
+    private static final Map<String, Resolved<String>> queueUrls = new ConcurrentHashMap<>();
+    private static final Map<String, Resolved<Boolean>> buckets = new ConcurrentHashMap<>();
+
+    private AwsResolver() {
+    }
+
+    /**
+     * @param queueName The name of the SQS queue.
+     * @return the URL of the queue
+     * @throws QueueDoesNotExistException If the queue does not exist
+     */
+    public static String queueUrl(String queueName) {
+        Resolved<String> resolved = queueUrls.get(queueName);
+        if (resolved != null && !resolved.isExpired())
+            return resolved.value;
+
+        String queueUrl = AwsClients.sqs().getQueueUrl(GetQueueUrlRequest.builder().queueName(queueName).build())
+                .queueUrl();
+        queueResolved(queueName, queueUrl);
+        return queueUrl;
+    }
+
+    /**
+     * @param queueName The name of the SQS queue.
+     * @return Whether the queue exists or not
+     */
+    public static boolean queueExists(String queueName) {
+        try {
+            queueUrl(queueName);
+            return true;
+        } catch (QueueDoesNotExistException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Caches the URL of a queue, such as a queue just created.
+     *
+     * @param queueName The name of the SQS queue.
+     * @param queueUrl  The URL of the queue.
+     */
+    public static void queueResolved(String queueName, String queueUrl) {
+        queueUrls.put(queueName, new Resolved<>(queueUrl));
+    }
+
+    /**
+     * Sends a request to a queue, with its cached URL. If the queue does not exist at that URL, such as a queue deleted
+     * and created again, its URL is resolved again and the request is sent once more.
+     *
+     * @param queueName The name of the SQS queue.
+     * @param request   The request, sent with the URL of the queue.
+     * @return the response of the request
+     * @throws QueueDoesNotExistException If the queue does not exist once resolved again
+     */
+    public static <T> T withQueueUrl(String queueName, Function<String, T> request) {
+        try {
+            return request.apply(queueUrl(queueName));
+        } catch (QueueDoesNotExistException e) {
+            invalidateQueue(queueName);
+            return request.apply(queueUrl(queueName));
+        }
+    }
+
+    /**
+     * Removes the URL of a queue from the cache, after a request failed because the queue does not exist.
+     *
+     * @param queueName The name of the SQS queue.
+     */
+    public static void invalidateQueue(String queueName) {
+        queueUrls.remove(queueName);
+    }
+
+    /**
+     * Checks if a bucket exists with a HEAD request on the bucket, whose cost does not depend on the number of buckets
+     * of the account.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @return Whether the bucket exists and is accessible or not
+     * @throws S3Exception If any error other than a missing or forbidden bucket occurs
+     */
+    public static boolean bucketExists(String bucketName) {
+        Resolved<Boolean> resolved = buckets.get(bucketName);
+        if (resolved != null && !resolved.isExpired())
+            return true;
+
+        try {
+            AwsClients.s3().headBucket(HeadBucketRequest.builder().bucket(bucketName).build());
+        } catch (S3Exception e) {
+            // A HEAD response has no body to tell the error, only its status
+            if (e.statusCode() == 404 || e.statusCode() == 403)
+                return false;
+            throw e;
+        }
+        bucketResolved(bucketName);
+        return true;
+    }
+
+    /**
+     * Caches that a bucket exists, such as a bucket just created.
+     *
+     * @param bucketName The name of the S3 bucket.
+     */
+    public static void bucketResolved(String bucketName) {
+        buckets.put(bucketName, new Resolved<>(true));
+    }
+
+    /**
+     * Sends a request to a bucket. If the bucket does not exist, it is checked again, and the request is sent once
+     * more if the bucket was created in the meantime.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param request    The request.
+     * @return the response of the request
+     * @throws NoSuchBucketException If the bucket does not exist once checked again
+     * @throws E                     If the request fails otherwise
+     */
+    public static <T, E extends Exception> T withBucket(String bucketName, BucketRequest<T, E> request) throws E {
+        try {
+            return request.send();
+        } catch (NoSuchBucketException e) {
+            invalidateBucket(bucketName);
+            if (!bucketExists(bucketName))
+                throw e;
+            return request.send();
+        }
+    }
+
+    /**
+     * Removes a bucket from the cache, after a request failed because the bucket does not exist.
+     *
+     * @param bucketName The name of the S3 bucket.
+     */
+    public static void invalidateBucket(String bucketName) {
+        buckets.remove(bucketName);
+    }
+
+    /**
+     * A request to a bucket.
+     */
+    @FunctionalInterface
+    public interface BucketRequest<T, E extends Exception> {
+        T send() throws E;
+    }
+
+    private static class Resolved<T> {
+        private final T value;
+        private final long expiresAt = System.currentTimeMillis() + TTL_MILLIS;
+
+        private Resolved(T value) {
+            this.value = value;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package fr.emse.etu.cloud.common;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts of money carried as a number of cents in a long.
+ * <p>
+ * Sums of cents are exact, whatever the number of sales, and amounts are formatted by appending their digits to a
+ * reused buffer rather than through a {@link java.text.DecimalFormat}, which is slow and not thread-safe. The workers
+ * and the consolidator read and write amounts with the same rules, so that their summaries add up to the cent.
+ */
+public final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * Parses a decimal amount such as "-123.45".
+     *
+     * @param text  Text holding the amount
+     * @param start Index of the amount
+     * @param end   Index after the amount
+     * @return the amount in cents, rounded half even if it has more than 2 decimals
+     * @throws NumberFormatException If the text is not a decimal number
+     */
+    public static long parseCents(CharSequence text, int start, int end) {
+        boolean negative = end > start && text.charAt(start) == '-';
+        long cents = 0;
+        int decimals = -1;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || decimals == 2 || cents > Long.MAX_VALUE / 1000)
+                return parseExact(text.subSequence(start, end).toString());
+            cents = cents * 10 + digit;
+            if (decimals >= 0)
+                decimals++;
+        }
+        if (end == start || end == start + 1 && (negative || decimals == 0))
+            return parseExact(text.subSequence(start, end).toString());
+        return scale(cents, decimals, negative);
+    }
+
+    /**
+     * @see #parseCents(CharSequence, int, int)
+     */
+    public static long parseCents(CharSequence text) {
+        return parseCents(text, 0, text.length());
+    }
+
+    /**
+     * Appends an amount of cents with 2 decimals, such as "-123.45", without creating any intermediate string.
+     *
+     * @param out   Buffer to append to
+     * @param cents Amount in cents
+     * @return the buffer
+     */
+    public static StringBuilder appendCents(StringBuilder out, long cents) {
+        long units = cents / 100;
+        int fraction = (int) Math.abs(cents % 100);
+        if (cents < 0 && units == 0)
+            out.append('-');
+        out.append(units).append('.');
+        if (fraction < 10)
+            out.append('0');
+        return out.append(fraction);
+    }
+
+    private static long scale(long digits, int decimals, boolean negative) {
+        long cents = decimals <= 0 ? digits * 100 : decimals == 1 ? digits * 10 : digits;
+        return negative ? -cents : cents;
+    }
+
+    private static long parseExact(String amount) {
+        return new BigDecimal(amount).movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+}
@@ -1,21 +1,19 @@
-package fr.emse.etu.cloud.client.s3;
+package fr.emse.etu.cloud.common.s3;
 
-import software.amazon.awssdk.services.s3.S3Client;
+import fr.emse.etu.cloud.common.AwsResolver;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
 public class S3CheckBucket {
 
     /**
-     * Checks if a bucket exists.
+     * Checks if a bucket exists, with a HEAD request on the bucket rather than listing all the buckets, once for all
+     * the helpers while the answer is cached.
      * @param bucketName the bucket name you want to exists
      * @return Whether the bucket exists or not
      */
     public static boolean exists(String bucketName) {
-        try (S3Client s3Client = S3Client.builder().build()) {
-            return s3Client.listBuckets()
-                    .buckets()
-                    .stream()
-                    .anyMatch(bucket -> bucket.name().equals(bucketName));
+        try {
+            return AwsResolver.bucketExists(bucketName);
         } catch (S3Exception e) {
             System.err.println("[S3] Error checking bucket existence: " + e.awsErrorDetails().errorMessage());
         }
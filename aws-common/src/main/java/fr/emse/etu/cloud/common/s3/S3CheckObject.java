@@ -0,0 +1,83 @@
+package fr.emse.etu.cloud.common.s3;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class S3CheckObject {
+    // Results are kept for a short time, set with -Dclients.keyCacheMillis, as other applications update the bucket
+    public static final long KEY_CACHE_MILLIS = Long.getLong("clients.keyCacheMillis", 5000);
+    private static final int KEY_CACHE_SIZE = 10_000;
+    private static final Map<String, CachedKey> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if an object exists with a HEAD request on its key, whose cost does not depend on the number of objects
+     * in the bucket. The answer is cached for {@link #KEY_CACHE_MILLIS} ms.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @return Whether the object exists or not
+     */
+    public static boolean exists(String bucketName, String objectKey) {
+        CachedKey cached = keys.get(bucketName + '/' + objectKey);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis())
+            return cached.exists;
+
+        boolean exists;
+        try {
+            AwsClients.s3().headObject(HeadObjectRequest.builder().bucket(bucketName).key(objectKey).build());
+            exists = true;
+        } catch (NoSuchKeyException e) {
+            exists = false;
+        } catch (S3Exception e) {
+            if (e.statusCode() != 404)
+                throw e;
+            exists = false;
+        }
+        remember(bucketName, objectKey, exists);
+        return exists;
+    }
+
+    /**
+     * Tells from the cache, without any request, whether an object was recently found missing.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @return Whether the object is known to be missing
+     */
+    public static boolean isKnownMissing(String bucketName, String objectKey) {
+        CachedKey cached = keys.get(bucketName + '/' + objectKey);
+        return cached != null && !cached.exists && cached.expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * Records in the cache whether an object exists, after a request which found or wrote it.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @param exists     Whether the object exists or not
+     */
+    public static void remember(String bucketName, String objectKey, boolean exists) {
+        if (keys.size() >= KEY_CACHE_SIZE) {
+            long now = System.currentTimeMillis();
+            keys.values().removeIf(key -> key.expiresAt <= now);
+            if (keys.size() >= KEY_CACHE_SIZE)
+                keys.clear();
+        }
+        keys.put(bucketName + '/' + objectKey, new CachedKey(exists, System.currentTimeMillis() + KEY_CACHE_MILLIS));
+    }
+
+    private static class CachedKey {
+        private final boolean exists;
+        private final long expiresAt;
+
+        private CachedKey(boolean exists, long expiresAt) {
+            this.exists = exists;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,5 +1,7 @@
-package fr.emse.etu.cloud.worker.s3;
+package fr.emse.etu.cloud.common.s3;
 
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
@@ -17,7 +19,8 @@ public class S3CreateBucket {
     public static void createBucket(String bucketName) {
         System.out.printf("[S3] Creating bucket '%s' ...\n", bucketName);
 
-        try (S3Client s3Client = S3Client.builder().build()) {
+        S3Client s3Client = AwsClients.s3();
+        try {
             S3Waiter s3Waiter = s3Client.waiter();
             CreateBucketRequest createBucketRequest = CreateBucketRequest.builder()
                     .bucket(bucketName)
@@ -29,6 +32,7 @@ public class S3CreateBucket {
                     .build();
 
             s3Waiter.waitUntilBucketExists(waitRequest);
+            AwsResolver.bucketResolved(bucketName);
             System.out.println("[S3] Bucket '" + bucketName + "' is successfully created and ready for use.");
             System.out.println("[S3] Bucket creation process completed.");
             // We add some delay in order to do not have any error because of the time it takes to create the bucket
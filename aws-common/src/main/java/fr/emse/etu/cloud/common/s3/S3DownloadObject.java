@@ -0,0 +1,151 @@
+package fr.emse.etu.cloud.common.s3;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class S3DownloadObject {
+
+    /**
+     * Reads a text object from S3 into memory.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @return the content of the object in UTF-8, or null if the object does not exist
+     * @throws S3Exception If any other error occurs
+     */
+    public static String readObject(String bucketName, String objectKey) {
+        GetObjectRequest request = GetObjectRequest.builder().key(objectKey).bucket(bucketName).build();
+        try {
+            return AwsClients.s3().getObjectAsBytes(request).asUtf8String();
+        } catch (NoSuchKeyException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Downloads an object from S3 and writes it to a specified file path.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @param outputPath The path to write the object to.
+     * @return Whether the object was downloaded, false if it does not exist or could not be written
+     * @throws S3Exception If S3 fails the download, such as a denied access, which may succeed when tried again
+     */
+    public static boolean downloadObject(String bucketName, String objectKey, String outputPath) {
+        try {
+            // The download itself tells whether the object exists, unless it is known to be missing
+            if (S3CheckObject.isKnownMissing(bucketName, objectKey)) {
+                System.err.println("[S3] File not found in S3 Bucket: " + objectKey);
+                return false;
+            }
+            System.out.println("[S3] Downloading object from Amazon S3 and saving to the local disk...");
+            // Written into the file as it arrives, in parallel ranges for large objects
+            Path outputFile = Path.of(outputPath);
+            AwsResolver.withBucket(bucketName, () -> {
+                S3Transfer.download(bucketName, objectKey, outputFile);
+                return outputFile;
+            });
+            S3CheckObject.remember(bucketName, objectKey, true);
+            System.out.println("[S3] File downloaded into " + outputFile.toUri());
+            return true;
+        } catch (NoSuchKeyException e) {
+            S3CheckObject.remember(bucketName, objectKey, false);
+            System.err.println("[S3] File not found in S3 Bucket: " + objectKey);
+        } catch (IOException e) {
+            System.err.println("[S3] Error writing file: " + e.getMessage());
+            e.printStackTrace();
+        } catch (S3Exception e) {
+            System.err.println("[S3] S3 error: " + e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+        return false;
+    }
+
+    /**
+     * Reads an object from S3 as a stream, so that each byte is consumed as it arrives, without buffering the whole
+     * object in memory or on disk first.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @param copyPath   The path to write a copy of the object to while it is read, or null for no copy.
+     * @param reader     The reader of the object stream.
+     * @return The result of the reader, or null if the object does not exist.
+     * @throws RuntimeException If the object cannot be read, such as a connection lost while it is streamed or an
+     *                          error of S3, which may succeed when tried again
+     */
+    public static <T> T streamObject(String bucketName, String objectKey, String copyPath, ObjectReader<T> reader) {
+        S3Client s3Client = AwsClients.s3();
+        try {
+            System.out.println("[S3] Streaming object '" + objectKey + "' from Amazon S3...");
+            GetObjectRequest request = GetObjectRequest.builder().key(objectKey).bucket(bucketName).build();
+
+            return AwsResolver.withBucket(bucketName, () -> {
+                try (ResponseInputStream<GetObjectResponse> objectStream = s3Client.getObject(request)) {
+                    if (copyPath == null)
+                        return reader.read(objectStream);
+
+                    Path copy = Path.of(copyPath);
+                    Files.createDirectories(copy.getParent());
+                    try (OutputStream copyStream = Files.newOutputStream(copy)) {
+                        T result = reader.read(new CopyingInputStream(objectStream, copyStream));
+                        System.out.println("[S3] Copy of the object written into " + copy.toUri());
+                        return result;
+                    }
+                }
+            });
+        } catch (NoSuchKeyException e) {
+            S3CheckObject.remember(bucketName, objectKey, false);
+            System.err.println("[S3] File not found in S3 Bucket: " + objectKey);
+        } catch (IOException e) {
+            System.err.println("[S3] Error reading object: " + e.getMessage());
+            throw new RuntimeException(e);
+        } catch (S3Exception e) {
+            System.err.println("[S3] S3 error: " + e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the stream of an S3 object.
+     */
+    @FunctionalInterface
+    public interface ObjectReader<T> {
+        T read(InputStream objectStream) throws IOException;
+    }
+
+    /**
+     * Writes the bytes read from a stream to another stream.
+     */
+    private static class CopyingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        private CopyingInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                copy.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0)
+                copy.write(bytes, offset, read);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package fr.emse.etu.cloud.common.s3;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Transfers of large objects between S3 and local files, split into parts moved concurrently.
+ * <p>
+ * A file larger than a part is uploaded with a multipart upload whose parts are sent in parallel, each read from its
+ * region of the file as it is sent. An object larger than a part is downloaded with parallel byte-range requests, each
+ * written straight into its region of the file. Whatever the size of the object, the memory used is a small buffer
+ * per transfer thread, not the whole object.
+ * <p>
+ * Uploaded files are never read into memory as a whole: each request body is read from its region of the file with
+ * positional reads, into the buffer of the HTTP client. A CRC32 checksum of each body is computed by the client while
+ * it is sent and checked by S3, so that a file corrupted or truncated on the way is rejected rather than stored.
+ * <p>
+ * The transfers are set with system properties, given as `java -D&lt;property&gt;=&lt;value&gt;`:
+ * <ul>
+ * <li>`clients.partSize`: size in bytes of the parts, at least 5 MiB as required by S3 (default 8 MiB),</li>
+ * <li>`clients.transferThreads`: maximum number of parts moved at once by the application (default 8).</li>
+ * </ul>
+ */
+public final class S3Transfer {
+    public static final long PART_SIZE = Math.max(Long.getLong("clients.partSize", 8L << 20), 5L << 20);
+    public static final int TRANSFER_THREADS = Integer.getInteger("clients.transferThreads", 8);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CONTENT_TYPE = "application/octet-stream";
+    private static final ChecksumAlgorithm CHECKSUM = ChecksumAlgorithm.CRC32;
+
+    private static ExecutorService transferPool;
+
+    private S3Transfer() {
+    }
+
+    /**
+     * Uploads a file to S3, in a single request if it is not larger than a part, else with a multipart upload whose
+     * parts are sent in parallel. An existent object is overwritten.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @param file       The file to upload.
+     * @return The ETag of the uploaded object
+     * @throws IOException If the file cannot be read
+     * @throws S3Exception If the upload fails, in which case the uploaded parts are discarded
+     */
+    public static String upload(String bucketName, String objectKey, Path file) throws IOException {
+        S3Client s3Client = AwsClients.s3();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= PART_SIZE) {
+                PutObjectRequest request = PutObjectRequest.builder().bucket(bucketName).key(objectKey)
+                        .checksumAlgorithm(CHECKSUM).build();
+                return s3Client.putObject(request, regionBody(channel, 0, size)).eTag();
+            }
+
+            String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName).key(objectKey).checksumAlgorithm(CHECKSUM).build()).uploadId();
+            try {
+                List<Callable<CompletedPart>> parts = new ArrayList<>();
+                for (long offset = 0; offset < size; offset += PART_SIZE) {
+                    int partNumber = (int) (offset / PART_SIZE) + 1;
+                    long position = offset;
+                    long length = Math.min(PART_SIZE, size - offset);
+                    parts.add(() -> {
+                        UploadPartRequest request = UploadPartRequest.builder().bucket(bucketName).key(objectKey)
+                                .uploadId(uploadId).partNumber(partNumber).contentLength(length)
+                                .checksumAlgorithm(CHECKSUM).build();
+                        UploadPartResponse response = s3Client.uploadPart(request, regionBody(channel, position, length));
+                        return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag())
+                                .checksumCRC32(response.checksumCRC32()).build();
+                    });
+                }
+                System.out.println("[S3] Uploading " + parts.size() + " parts of '" + objectKey + "' in parallel...");
+                List<CompletedPart> completedParts = runAll(parts);
+
+                return s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(bucketName).key(objectKey).uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                        .build()).eTag();
+            } catch (IOException | RuntimeException e) {
+                s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucketName).key(objectKey).uploadId(uploadId).build());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Downloads an object from S3 into a file, with byte-range requests sent in parallel if the object is larger than
+     * a part. The file is created or replaced.
+     *
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key of the object in the bucket.
+     * @param file       The file to write the object to.
+     * @throws IOException        If the file cannot be written
+     * @throws NoSuchKeyException If the object does not exist
+     * @throws S3Exception        If the download fails, for instance if the object is replaced during the download
+     */
+    public static void download(String bucketName, String objectKey, Path file) throws IOException {
+        S3Client s3Client = AwsClients.s3();
+        HeadObjectResponse head;
+        try {
+            head = s3Client.headObject(HeadObjectRequest.builder().bucket(bucketName).key(objectKey).build());
+        } catch (S3Exception e) {
+            // A HEAD response has no body to tell the error, only its status
+            if (e.statusCode() == 404 && !(e instanceof NoSuchKeyException))
+                throw NoSuchKeyException.builder().message(e.getMessage()).statusCode(404).build();
+            throw e;
+        }
+        long size = head.contentLength();
+
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Callable<Void>> ranges = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += PART_SIZE) {
+                long position = offset;
+                long last = Math.min(offset + PART_SIZE, size) - 1;
+                ranges.add(() -> {
+                    // Every range must come from the same version of the object
+                    GetObjectRequest request = GetObjectRequest.builder().bucket(bucketName).key(objectKey)
+                            .range("bytes=" + position + "-" + last).ifMatch(head.eTag()).build();
+                    try (ResponseInputStream<GetObjectResponse> range = s3Client.getObject(request)) {
+                        writeRegion(range, channel, position, last + 1 - position);
+                    }
+                    return null;
+                });
+            }
+            if (ranges.size() > 1)
+                System.out.println("[S3] Downloading " + ranges.size() + " ranges of '" + objectKey + "' in parallel...");
+            runAll(ranges);
+        }
+    }
+
+    /**
+     * @return a request body read from a region of a file each time it is sent
+     */
+    private static RequestBody regionBody(FileChannel channel, long position, long length) {
+        return RequestBody.fromContentProvider(() -> new RegionInputStream(channel, position, length), length,
+                CONTENT_TYPE);
+    }
+
+    private static void writeRegion(InputStream in, FileChannel channel, long position, long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            if (written + read > length)
+                throw new IOException("Range of " + length + " bytes at " + position + " is longer than requested");
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+            while (bytes.hasRemaining())
+                written += channel.write(bytes, position + written);
+        }
+        if (written != length)
+            throw new IOException("Range of " + length + " bytes at " + position + " ended after " + written + " bytes");
+    }
+
+    /**
+     * Runs tasks on the transfer threads, the first task on the calling thread, and waits for all of them.
+     *
+     * @return the results of the tasks, in order
+     */
+    private static <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        if (tasks.isEmpty())
+            return new ArrayList<>();
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks.subList(1, tasks.size()))
+            futures.add(pool().submit(task));
+        List<T> results = new ArrayList<>();
+        try {
+            results.add(tasks.get(0).call());
+            for (Future<T> future : futures)
+                results.add(future.get());
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Transfer interrupted", e);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            // Stop the other parts of a failed transfer, and wait for them before the file is closed
+            for (Future<T> future : futures)
+                future.cancel(true);
+            for (Future<T> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException | CancellationException e) {
+                    // Already reported by the first failure
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static synchronized ExecutorService pool() {
+        if (transferPool == null) {
+            // Daemon threads, so that an idle pool does not keep the application alive
+            transferPool = Executors.newFixedThreadPool(TRANSFER_THREADS, task -> {
+                Thread thread = new Thread(task, "s3-transfer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return transferPool;
+    }
+
+    /**
+     * Reads a region of a file with positional reads, so that several regions of the same channel are read at once.
+     */
+    private static class RegionInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        private RegionInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end)
+                return -1;
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)), position);
+            if (read < 0)
+                throw new IOException("File ended before its region at " + position);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+}
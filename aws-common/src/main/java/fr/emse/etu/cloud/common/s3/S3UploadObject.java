@@ -0,0 +1,82 @@
+package fr.emse.etu.cloud.common.s3;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+
+public class S3UploadObject {
+
+    /**
+     * Uploads an object from a specified file path to S3.
+     *
+     * @param bucketName  The name of the S3 bucket.
+     * @param s3objectKey The key of the object in the bucket.
+     * @param inputPath   The path to write the object to.
+     * @param overwrite   Whether to overwrite existent file in S3 bucket.
+     * @return Whether the object is in the bucket, uploaded or already existent, false if the file could not be read
+     */
+    public static boolean uploadObject(String bucketName, String inputPath, String s3objectKey, boolean overwrite) {
+        // If file does not already exist, checked with a HEAD request on the key only when it must not be overwritten
+        System.out.println("[S3] Uploading object '" + s3objectKey + "' to bucket '" + bucketName + "'...");
+        if (overwrite || !S3CheckObject.exists(bucketName, s3objectKey)) {
+            String uploadResult = uploadObjectToS3(bucketName, inputPath, s3objectKey);
+            if (!uploadResult.isEmpty())
+                S3CheckObject.remember(bucketName, s3objectKey, true);
+            if (uploadResult.isEmpty()) {
+                System.err.println("[S3] Upload failed");
+                return false;
+            }
+            System.out.println("[S3] Upload completed - ETag: " + uploadResult);
+        } else
+            System.out.println("[S3] File already exists");
+        return true;
+    }
+
+    /**
+     * Uploads an object from memory to S3, overwriting any existent object.
+     *
+     * @param bucketName  The name of the S3 bucket.
+     * @param s3objectKey The key of the object in the bucket.
+     * @param content     The content of the object, from its position to its limit.
+     * @throws S3Exception If the upload fails
+     */
+    public static void uploadBytes(String bucketName, String s3objectKey, ByteBuffer content) {
+        System.out.println("[S3] Uploading object '" + s3objectKey + "' to bucket '" + bucketName + "'...");
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(s3objectKey)
+                .build();
+
+        PutObjectResponse putResponse = AwsClients.s3().putObject(putObjectRequest, RequestBody.fromByteBuffer(content));
+        S3CheckObject.remember(bucketName, s3objectKey, true);
+        System.out.println("[S3] Upload completed - ETag: " + putResponse.eTag());
+    }
+
+    /**
+     * Uploads an object to an Amazon S3 bucket.
+     *
+     * @param filePath   The path of the file to upload.
+     * @param bucketName The name of the S3 bucket.
+     * @param objectKey  The key for the object to upload.
+     * @return The ETag of the uploaded object or an empty string if the upload fails.
+     */
+    private static String uploadObjectToS3(String bucketName, String filePath, String objectKey) {
+        try {
+            // Streamed from the file, in parallel parts for large files
+            return AwsResolver.withBucket(bucketName, () -> S3Transfer.upload(bucketName, objectKey, Path.of(filePath)));
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            e.printStackTrace();
+        } catch (S3Exception e) {
+            System.err.println("[S3] Error during object upload: " + e.getMessage());
+            System.exit(1);
+        }
+        return "";
+    }
+}
@@ -0,0 +1,79 @@
+package fr.emse.etu.cloud.common.sqs;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the messages sent to an SQS queue, to send them by batches.
+ * <p>
+ * The buffered messages are sent in a single request as soon as a batch is full, or when the oldest message has
+ * waited for `clients.batchFlushMillis` ms (default 200), so that a message is never delayed for long. The remaining
+ * messages are sent when the sender is closed.
+ */
+public class SQSBatchSender implements Closeable {
+    public static final long FLUSH_MILLIS = Long.getLong("clients.batchFlushMillis", 200);
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "sqs-batch-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String queueName;
+    private final List<String> pendingMessages = new ArrayList<>();
+    private final List<String> failedMessages = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param queueName The name of the SQS queue.
+     */
+    public SQSBatchSender(String queueName) {
+        this.queueName = queueName;
+    }
+
+    /**
+     * Buffers a message, and sends the buffered messages if they fill a batch.
+     *
+     * @param message The body of the message.
+     */
+    public synchronized void send(String message) {
+        pendingMessages.add(message);
+        if (pendingMessages.size() >= SQSSendMessage.MAX_BATCH_SIZE)
+            flush();
+        else if (scheduledFlush == null)
+            scheduledFlush = FLUSHER.schedule(this::flush, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the buffered messages.
+     */
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pendingMessages.isEmpty())
+            return;
+        failedMessages.addAll(SQSSendMessage.sendMessages(queueName, new ArrayList<>(pendingMessages)));
+        pendingMessages.clear();
+    }
+
+    /**
+     * @return The bodies of the messages which could not be sent so far.
+     */
+    public synchronized List<String> getFailedMessages() {
+        return new ArrayList<>(failedMessages);
+    }
+
+    /**
+     * Sends the buffered messages.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+}
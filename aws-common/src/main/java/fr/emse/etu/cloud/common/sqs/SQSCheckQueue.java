@@ -0,0 +1,34 @@
+package fr.emse.etu.cloud.common.sqs;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+
+public class SQSCheckQueue {
+
+    /**
+     * Checks if a queue exists, once for all the helpers while its URL is cached
+     * @param queueName The name of the SQS queue to check
+     * @return a boolean whether it exists
+     */
+    public static boolean exists(String queueName) {
+        try {
+            return AwsResolver.queueExists(queueName);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public static boolean hasMessages(String queueName) {
+        SqsClient sqsClient = AwsClients.sqs();
+        String queueUrl = AwsResolver.queueUrl(queueName);
+
+        ReceiveMessageRequest receiveMessageRequest = ReceiveMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .build();
+
+        // Check if the list of messages is empty
+        return sqsClient.receiveMessage(receiveMessageRequest).hasMessages();
+    }
+}
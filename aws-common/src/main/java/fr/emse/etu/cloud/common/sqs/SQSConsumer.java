@@ -0,0 +1,94 @@
+package fr.emse.etu.cloud.common.sqs;
+
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.List;
+
+/**
+ * Consumes the messages of an SQS queue with long polling.
+ * <p>
+ * A new batch of messages is requested as soon as the previous one is handled, so that a message is handled about as
+ * soon as it is sent, and each request waits on the queue until a message arrives instead of returning empty. As an
+ * empty answer already took the whole wait time of the request, the next request is sent at once by default. With
+ * short polling, the consumer can instead wait between requests while the queue stays empty, for a time doubled after
+ * each empty answer up to a maximum, so that an idle application makes few requests. A failed request is sent again
+ * after a backoff, so that the consumer keeps polling through errors of SQS or of the network.
+ * <p>
+ * The polling is set with system properties, given as `java -D&lt;property&gt;=&lt;value&gt;`:
+ * <ul>
+ * <li>`clients.waitTimeSeconds`: maximum time a request waits for messages, from 0 to 20 seconds (default 20),</li>
+ * <li>`clients.idleBackoffMillis`: wait after the first empty answer, 0 to never wait (default 0),</li>
+ * <li>`clients.maxIdleBackoffMillis`: maximum wait between requests while the queue is empty (default 10000).</li>
+ * </ul>
+ */
+public class SQSConsumer {
+    public static final int WAIT_TIME_SECONDS = Integer.getInteger("clients.waitTimeSeconds", 20);
+    public static final long IDLE_BACKOFF_MILLIS = Long.getLong("clients.idleBackoffMillis", 0);
+    public static final long MAX_IDLE_BACKOFF_MILLIS = Long.getLong("clients.maxIdleBackoffMillis", 10_000);
+    // A failed request is sent again after at most 2^6 times the retry backoff of SQSSendMessage
+    private static final int MAX_RETRY_ATTEMPT = 7;
+
+    /**
+     * Handles the messages received from the queue until the thread is interrupted, retrying failed requests.
+     *
+     * @param queueName The name of the SQS queue.
+     * @param handler   The handler of each non-empty batch of messages.
+     */
+    public static void poll(String queueName, MessageHandler handler) {
+        long backoff = 0;
+        int failures = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Message> messages;
+            try {
+                messages = SQSReceiveMessage.receiveMessages(queueName, WAIT_TIME_SECONDS);
+            } catch (AbortedException e) {
+                // Interrupted while waiting for messages
+                return;
+            } catch (SdkException e) {
+                // Such as a lost connection or a throttled request, which may succeed when sent again
+                System.err.println("[SQS] Could not receive messages from " + queueName + ", trying again: " + e.getMessage());
+                SQSSendMessage.backOff(Math.min(++failures, MAX_RETRY_ATTEMPT));
+                continue;
+            }
+            failures = 0;
+            if (!messages.isEmpty()) {
+                backoff = 0;
+                handler.handle(messages);
+                continue;
+            }
+
+            backoff = Math.min(backoff == 0 ? IDLE_BACKOFF_MILLIS : 2 * backoff, MAX_IDLE_BACKOFF_MILLIS);
+            if (backoff > 0) {
+                System.out.println("[SQS] " + queueName + " is empty, next request in " + backoff + " ms");
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the messages received from the queue until it is empty.
+     *
+     * @param queueName       The name of the SQS queue.
+     * @param waitTimeSeconds The time without any message after which the queue is considered empty, from 0 to 20 s.
+     * @param handler         The handler of each non-empty batch of messages.
+     */
+    public static void drain(String queueName, int waitTimeSeconds, MessageHandler handler) {
+        List<Message> messages;
+        while (!(messages = SQSReceiveMessage.receiveMessages(queueName, waitTimeSeconds)).isEmpty())
+            handler.handle(messages);
+    }
+
+    /**
+     * Handles a batch of messages received from a queue.
+     */
+    @FunctionalInterface
+    public interface MessageHandler {
+        void handle(List<Message> messages);
+    }
+}
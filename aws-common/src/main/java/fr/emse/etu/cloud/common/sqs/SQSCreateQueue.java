@@ -1,5 +1,7 @@
-package fr.emse.etu.cloud.client.sqs;
+package fr.emse.etu.cloud.common.sqs;
 
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
 import software.amazon.awssdk.services.sqs.model.SqsException;
@@ -15,12 +17,13 @@ public class SQSCreateQueue {
      */
     public static void createQueue(String queueName) {
 
-        try (SqsClient sqsClient = SqsClient.create()) {
+        SqsClient sqsClient = AwsClients.sqs();
+        try {
             System.out.println("[SQS] Creating Queue '" + queueName + "' ...");
             CreateQueueRequest queueCreationRequest = CreateQueueRequest.builder()
                     .queueName(queueName)
                     .build();
-            sqsClient.createQueue(queueCreationRequest);
+            AwsResolver.queueResolved(queueName, sqsClient.createQueue(queueCreationRequest).queueUrl());
             System.out.println("[SQS] Queue created");
             Thread.sleep(2000);
         } catch (SqsException e) {
@@ -0,0 +1,72 @@
+package fr.emse.etu.cloud.common.sqs;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SQSDeleteMessage {
+
+    /**
+     * Deletes a batch of messages from a specified SQS queue, by batches of {@link SQSSendMessage#MAX_BATCH_SIZE}
+     * messages. A message failed by SQS is deleted again in the next request, after a
+     * {@link SQSSendMessage#backOff(int)}, up to {@link SQSSendMessage#MAX_ATTEMPTS} times, unless SQS rejects its
+     * receipt handle as invalid. A message not deleted is received again once its visibility timeout expires.
+     *
+     * @param queueName    The name of the SQS queue from which messages are to be deleted.
+     * @param messageBatch A list of messages that are to be deleted.
+     * @return The messages which could not be deleted.
+     * @throws SqsException If any error occurs during the deletion process.
+     */
+    public static List<Message> deleteMessages(String queueName, List<Message> messageBatch) {
+        System.out.println("[SQS] Deleting messages from " + queueName + "...");
+
+        SqsClient sqsClient = AwsClients.sqs();
+        List<Message> failedMessages = new ArrayList<>();
+        try {
+            for (int start = 0; start < messageBatch.size(); start += SQSSendMessage.MAX_BATCH_SIZE) {
+                int end = Math.min(start + SQSSendMessage.MAX_BATCH_SIZE, messageBatch.size());
+                List<Message> batch = messageBatch.subList(start, end);
+                for (int attempt = 1; !batch.isEmpty(); attempt++) {
+                    // Entries are identified by their index in the batch
+                    List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>();
+                    for (int i = 0; i < batch.size(); i++)
+                        entries.add(DeleteMessageBatchRequestEntry.builder()
+                                .id(String.valueOf(i))
+                                .receiptHandle(batch.get(i).receiptHandle())
+                                .build());
+                    DeleteMessageBatchResponse response = AwsResolver.withQueueUrl(queueName, queueUrl ->
+                            sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                                    .queueUrl(queueUrl)
+                                    .entries(entries)
+                                    .build()));
+
+                    List<Message> retriedMessages = new ArrayList<>();
+                    for (BatchResultErrorEntry error : response.failed()) {
+                        Message msg = batch.get(Integer.parseInt(error.id()));
+                        if (error.senderFault() || attempt == SQSSendMessage.MAX_ATTEMPTS) {
+                            System.err.println("[SQS] Message not deleted: " + msg.body() + ": " + error.message());
+                            failedMessages.add(msg);
+                        } else
+                            retriedMessages.add(msg);
+                    }
+                    if (!retriedMessages.isEmpty() && !SQSSendMessage.backOff(attempt)) {
+                        failedMessages.addAll(retriedMessages);
+                        retriedMessages.clear();
+                    }
+                    batch = retriedMessages;
+                }
+            }
+            System.out.println("[SQS] Deleted " + (messageBatch.size() - failedMessages.size()) + " messages successfully");
+
+        } catch (SqsException e) {
+            System.err.println("[SQS] Error during message deletion: " + e.awsErrorDetails().errorMessage());
+            System.exit(1);
+        }
+        return failedMessages;
+    }
+
+}
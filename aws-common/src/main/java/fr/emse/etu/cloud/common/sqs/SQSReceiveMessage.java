@@ -0,0 +1,56 @@
+package fr.emse.etu.cloud.common.sqs;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.util.List;
+
+public class SQSReceiveMessage {
+
+    /**
+     * Receives messages from the specified SQS queue, without waiting for messages.
+     *
+     * @param queueName The URL of the SQS queue.
+     * @return A list of messages, or null if an error occurs.
+     * @throws SqsException Thrown if an error occurs in message retrieval.
+     */
+    public static List<Message> receiveMessages(String queueName) {
+        return receiveMessages(queueName, 0);
+    }
+
+    /**
+     * Receives messages from the specified SQS queue, with long polling: the request returns as soon as a message is
+     * available, or after waiting for messages for a time. Unlike short polling, an empty answer means that the queue
+     * has no visible message.
+     *
+     * @param queueName       The URL of the SQS queue.
+     * @param waitTimeSeconds The maximum time to wait for messages, from 0 to 20 seconds.
+     * @return A list of messages.
+     * @throws SqsException Thrown if an error occurs in message retrieval.
+     */
+    public static List<Message> receiveMessages(String queueName, int waitTimeSeconds) {
+        System.out.println("[SQS] Receiving messages from " + queueName + "...");
+
+        SqsClient sqsClient = AwsClients.sqs();
+        try {
+            List<Message> receivedMessages = AwsResolver.withQueueUrl(queueName, queueUrl ->
+                    sqsClient.receiveMessage(ReceiveMessageRequest.builder()
+                            .queueUrl(queueUrl)
+                            .maxNumberOfMessages(10)
+                            .waitTimeSeconds(waitTimeSeconds)
+                            .build())).messages();
+            System.out.println("[SQS] Receiving " + receivedMessages.size() + " messages:");
+            for (Message msg : receivedMessages)
+                System.out.println("\t Msg" + receivedMessages.indexOf(msg) + ": \t" + msg.body());
+            return receivedMessages;
+
+        } catch (SqsException e) {
+            System.err.println("[SQS] Error encountered: " + e.awsErrorDetails().errorMessage());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package fr.emse.etu.cloud.common.sqs;
+
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.AwsResolver;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class SQSSendMessage {
+    // Maximum number of entries of a batch request, and number of attempts of an entry failed by SQS
+    public static final int MAX_BATCH_SIZE = 10;
+    public static final int MAX_ATTEMPTS = 3;
+    // Maximum wait before the second attempt, doubled before each next one, set with -Dclients.retryBackoffMillis
+    public static final long RETRY_BACKOFF_MILLIS = Long.getLong("clients.retryBackoffMillis", 100);
+
+    /**
+     * This method is used to send a batch of messages to an SQS queue. It includes details about the bucket and the file.
+     *
+     * @param queueName The name of the SQS queue.
+     * @param msg       The name of the S3 bucket.
+     * @throws SqsException If any issue occurs while sending messages.
+     */
+    public static void sendMessages(String queueName, String msg) {
+        System.out.println("[SQS] Sending message ...");
+
+        SqsClient sqsClient = AwsClients.sqs();
+        try {
+            AwsResolver.withQueueUrl(queueName, queueUrl -> sqsClient.sendMessage(SendMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .messageBody(msg)
+                    .build()));
+            System.out.println("[SQS] Message successfully sent.");
+        } catch (SqsException e) {
+            System.err.println("[SQS] Error encountered: " + e.awsErrorDetails().errorMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Sends messages to an SQS queue, by batches of {@link #MAX_BATCH_SIZE} messages. A message failed by SQS is sent
+     * again in the next request, after a {@link #backOff(int)}, up to {@link #MAX_ATTEMPTS} times, unless SQS rejects
+     * it as invalid.
+     *
+     * @param queueName The name of the SQS queue.
+     * @param messages  The bodies of the messages.
+     * @return The bodies of the messages which could not be sent.
+     * @throws SqsException If any issue occurs while sending messages.
+     */
+    public static List<String> sendMessages(String queueName, List<String> messages) {
+        System.out.println("[SQS] Sending " + messages.size() + " messages ...");
+
+        SqsClient sqsClient = AwsClients.sqs();
+        List<String> failedMessages = new ArrayList<>();
+        try {
+            for (int start = 0; start < messages.size(); start += MAX_BATCH_SIZE) {
+                List<String> batch = messages.subList(start, Math.min(start + MAX_BATCH_SIZE, messages.size()));
+                for (int attempt = 1; !batch.isEmpty(); attempt++) {
+                    // Entries are identified by their index in the batch
+                    List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+                    for (int i = 0; i < batch.size(); i++)
+                        entries.add(SendMessageBatchRequestEntry.builder()
+                                .id(String.valueOf(i))
+                                .messageBody(batch.get(i))
+                                .build());
+                    SendMessageBatchResponse response = AwsResolver.withQueueUrl(queueName, queueUrl ->
+                            sqsClient.sendMessageBatch(SendMessageBatchRequest.builder()
+                                    .queueUrl(queueUrl)
+                                    .entries(entries)
+                                    .build()));
+
+                    List<String> retriedMessages = new ArrayList<>();
+                    for (BatchResultErrorEntry error : response.failed()) {
+                        String message = batch.get(Integer.parseInt(error.id()));
+                        if (error.senderFault() || attempt == MAX_ATTEMPTS) {
+                            System.err.println("[SQS] Message not sent: " + message + ": " + error.message());
+                            failedMessages.add(message);
+                        } else
+                            retriedMessages.add(message);
+                    }
+                    if (!retriedMessages.isEmpty() && !backOff(attempt)) {
+                        failedMessages.addAll(retriedMessages);
+                        retriedMessages.clear();
+                    }
+                    batch = retriedMessages;
+                }
+            }
+            System.out.println("[SQS] " + (messages.size() - failedMessages.size()) + " messages successfully sent.");
+        } catch (SqsException e) {
+            System.err.println("[SQS] Error encountered: " + e.awsErrorDetails().errorMessage());
+            System.exit(1);
+        }
+        return failedMessages;
+    }
+
+    /**
+     * Waits before sending again the entries of a batch failed by SQS, such as throttled entries. The wait is a random
+     * time up to {@link #RETRY_BACKOFF_MILLIS} ms doubled after each attempt, so that the retries of clients failed at
+     * the same time are spread rather than sent together.
+     *
+     * @param attempt The number of the failed attempt, from 1.
+     * @return Whether the entries can be retried, false if the thread was interrupted.
+     */
+    static boolean backOff(int attempt) {
+        long maxWait = RETRY_BACKOFF_MILLIS << Math.min(attempt - 1, 20);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxWait + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package fr.emse.etu.cloud.client.app;
 
-import fr.emse.etu.cloud.client.s3.S3CheckBucket;
-import fr.emse.etu.cloud.client.s3.S3CreateBucket;
-import fr.emse.etu.cloud.client.s3.S3UploadObject;
-import fr.emse.etu.cloud.client.sqs.SQSCheckQueue;
-import fr.emse.etu.cloud.client.sqs.SQSCreateQueue;
-import fr.emse.etu.cloud.client.sqs.SQSSendMessage;
+import fr.emse.etu.cloud.common.s3.S3CheckBucket;
+import fr.emse.etu.cloud.common.s3.S3CreateBucket;
+import fr.emse.etu.cloud.common.s3.S3UploadObject;
+import fr.emse.etu.cloud.common.sqs.SQSCheckQueue;
+import fr.emse.etu.cloud.common.sqs.SQSCreateQueue;
+import fr.emse.etu.cloud.common.sqs.SQSSendMessage;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -48,7 +48,7 @@ public class ClientApp {
         if (!SQSCheckQueue.exists(QUEUE_NAME))
             SQSCreateQueue.createQueue(QUEUE_NAME);
 
-        // Uploads file into S3 bucket
+        // Uploads file into S3 bucket, streamed from the disk with a checksum computed on the fly
         S3UploadObject.uploadObject(BUCKET_NAME, path.toString(), s3path, false);
 
         // Sends two messages msg1=bucketName, msg2=s3FilePath
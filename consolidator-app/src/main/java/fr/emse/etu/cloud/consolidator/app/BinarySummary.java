@@ -0,0 +1,106 @@
+package fr.emse.etu.cloud.consolidator.app;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Summary of a date read from the binary summary file of the worker, made of big-endian values:
+ * <pre>
+ * int   magic 'SSUM'
+ * short version
+ * int   number of stores S, int number of products P
+ * S + P keys (stores then products), each as an unsigned short length followed by its UTF-8 bytes
+ * long[S] profit by store, in cents
+ * long[P] profit by product, in cents
+ * int[P]  quantity by product
+ * int[P]  number of sales by product
+ * </pre>
+ */
+public class BinarySummary {
+    public static final int MAGIC = 0x5353554D;  // "SSUM"
+    public static final short VERSION = 1;
+
+    private final String[] stores;
+    private final long[] storeProfits;       // Amounts are in cents
+    private final String[] products;
+    private final long[] productProfits;
+    private final int[] productQuantities;
+    private final int[] productSold;
+
+    private BinarySummary(String[] stores, long[] storeProfits, String[] products, long[] productProfits,
+                          int[] productQuantities, int[] productSold) {
+        this.stores = stores;
+        this.storeProfits = storeProfits;
+        this.products = products;
+        this.productProfits = productProfits;
+        this.productQuantities = productQuantities;
+        this.productSold = productSold;
+    }
+
+    /**
+     * Reads a binary summary, straight from the buffer, without parsing any text.
+     *
+     * @param buffer Buffer holding the binary summary
+     * @return the summary
+     * @throws IllegalArgumentException If the buffer does not hold a binary summary of a supported version
+     */
+    public static BinarySummary read(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a binary summary");
+        short version = buffer.getShort();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported binary summary version " + version);
+
+        int storeCount = buffer.getInt();
+        int productCount = buffer.getInt();
+        String[] stores = readKeys(buffer, storeCount);
+        String[] products = readKeys(buffer, productCount);
+
+        long[] storeProfits = new long[storeCount];
+        buffer.asLongBuffer().get(storeProfits);
+        buffer.position(buffer.position() + storeCount * Long.BYTES);
+        long[] productProfits = new long[productCount];
+        buffer.asLongBuffer().get(productProfits);
+        buffer.position(buffer.position() + productCount * Long.BYTES);
+        int[] productQuantities = new int[productCount];
+        int[] productSold = new int[productCount];
+        buffer.asIntBuffer().get(productQuantities).get(productSold);
+        buffer.position(buffer.position() + 2 * productCount * Integer.BYTES);
+
+        return new BinarySummary(stores, storeProfits, products, productProfits, productQuantities, productSold);
+    }
+
+    public String[] stores() {
+        return stores;
+    }
+
+    public long[] storeProfits() {
+        return storeProfits;
+    }
+
+    public String[] products() {
+        return products;
+    }
+
+    public long[] productProfits() {
+        return productProfits;
+    }
+
+    public int[] productQuantities() {
+        return productQuantities;
+    }
+
+    public int[] productSold() {
+        return productSold;
+    }
+
+    private static String[] readKeys(ByteBuffer buffer, int count) {
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(key);
+            keys[i] = new String(key, StandardCharsets.UTF_8);
+        }
+        return keys;
+    }
+}
@@ -1,16 +1,18 @@
 package fr.emse.etu.cloud.consolidator.app;
 
-import fr.emse.etu.cloud.consolidator.s3.S3DownloadObject;
-import fr.emse.etu.cloud.consolidator.sqs.SQSDeleteMessage;
-import fr.emse.etu.cloud.consolidator.sqs.SQSReceiveMessage;
+import fr.emse.etu.cloud.common.Money;
+import fr.emse.etu.cloud.common.s3.S3DownloadObject;
+import fr.emse.etu.cloud.common.sqs.SQSConsumer;
+import fr.emse.etu.cloud.common.sqs.SQSDeleteMessage;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 import software.amazon.awssdk.services.sqs.model.Message;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DecimalFormat;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 /**
@@ -25,6 +27,9 @@ public class ConsolidatorApp {
     public static final String OUTBOX = "OUTBOX";
     public static final String LOCALFOLDER_STATS = "data/consolidator/";
     public static final String LOCALNAME_ANALYSIS = "analysisResults.txt";
+    public static final String LOCALNAME_BINARY_SUMMARY = "summary.bin";
+    // The OUTBOX queue is drained once no summary arrives for this time, set with -Dconsolidator.waitTimeSeconds
+    public static final int WAIT_TIME_SECONDS = Integer.getInteger("consolidator.waitTimeSeconds", 5);
 
 
     public static void main(String[] args) {
@@ -41,21 +46,28 @@ public class ConsolidatorApp {
      * @param date Date to input for the analysis
      */
     public static void run(String date) {
-        // Loop to check incoming messages every 10 seconds
-        System.out.println("[Consolidator] Checking queue for messages every 10 seconds:");
-        List<Message> messages;
-        while (!(messages = SQSReceiveMessage.receiveMessages(OUTBOX)).isEmpty()) {
-
+        // Loop on incoming messages until no message arrives for WAIT_TIME_SECONDS
+        System.out.println("[Consolidator] Checking queue for messages until none arrives for " + WAIT_TIME_SECONDS + "s:");
+        SQSConsumer.drain(OUTBOX, WAIT_TIME_SECONDS, messages -> {
             for (Message message : messages) {
                 String bucketName = message.body().split(":")[0];
                 String filePath = message.body().split(":")[1];
                 String fileName = message.body().split("/")[1];
                 S3DownloadObject.downloadObject(bucketName, filePath, LOCALFOLDER_STATS + fileName);
             }
-            SQSDeleteMessage.deleteMessages(OUTBOX, messages);
+            List<Message> undeleted = SQSDeleteMessage.deleteMessages(OUTBOX, messages);
+            if (!undeleted.isEmpty())
+                System.err.println("[Consolidator] " + undeleted.size() + " messages not deleted, their summaries will be downloaded again");
+        });
+
+        // Prefer the binary summary, which is read without parsing any text
+        Path binarySummary = Path.of(LOCALFOLDER_STATS + date + '-' + LOCALNAME_BINARY_SUMMARY);
+        if (Files.exists(binarySummary)) {
+            analyze(binarySummary, LOCALFOLDER_STATS + date + '-' + LOCALNAME_ANALYSIS);
+            return;
         }
 
-        String[] files = new File(LOCALFOLDER_STATS).list((dir,file) -> file.startsWith(date) && !file.endsWith(LOCALNAME_ANALYSIS));
+        String[] files = new File(LOCALFOLDER_STATS).list((dir,file) -> file.startsWith(date) && file.endsWith(".csv"));
         if (files != null) {
             String summaryByProductFile = files[0];
             String summaryByStoreFile = files[1];
@@ -72,9 +84,9 @@ public class ConsolidatorApp {
     public static void analyze(String summaryByStore, String summaryByProduct, String outputFile) {
         System.out.println("[Consolidator] Analysing CSV data for minimum, maximum, and sum calculations");
 
-        float maxProfit = 0;
-        float minProfit = Float.MAX_VALUE;
-        float totalProfit = 0;
+        long maxProfit = 0;                 // Amounts are in cents
+        long minProfit = Long.MAX_VALUE;
+        long totalProfit = 0;
         String mostProfitableStore = null, leastProfitableStore = null;
 
         // Reads and process store CSV
@@ -93,7 +105,7 @@ public class ConsolidatorApp {
                 String store = record.get("Store");
                 String profitRecord = record.get("Total Profit");
                 // Remove '$' suffix from "17535.38$"
-                float profit = Float.parseFloat(profitRecord.substring(0, profitRecord.length() - 1));
+                long profit = Money.parseCents(profitRecord, 0, profitRecord.length() - 1);
 
                 totalProfit += profit;
                 if (profit > maxProfit) {
@@ -126,23 +138,90 @@ public class ConsolidatorApp {
 
         // Writing analysis results
         Path path = Path.of(outputFile);
-        DecimalFormat formatter = new DecimalFormat("#.00");
         try (FileWriter writer = new FileWriter(outputFile)) {
+            StringBuilder line = new StringBuilder();
             writer.write("\tData Analysis Results: " + outputFile + ":\n");
-            writer.write("\tTotal Retailer's Profit: " + formatter.format(totalProfit)+"$\n");
+            line.append("\tTotal Retailer's Profit: ");
+            writer.append(Money.appendCents(line, totalProfit).append("$\n"));
             writer.write("\tMost Profitable Store: " + mostProfitableStore + "\n");
             writer.write("\tLeast Profitable Store: " + leastProfitableStore + "\n");
 
             for (CSVRecord record : productRecords) {
-                writer.write("\tProduct: " + record.get("Product") + " \tTotal Quantity: " + record.get("Total_Quantity")
-                        + "\tTotal Sold: " + record.get("Total_Sold") + "\tTotal Profit: " + record.get("Total_Profit") + "\n"
-                );
+                line.setLength(0);
+                line.append("\tProduct: ").append(record.get("Product")).append(" \tTotal Quantity: ").append(record.get("Total_Quantity"))
+                        .append("\tTotal Sold: ").append(record.get("Total_Sold")).append("\tTotal Profit: ").append(record.get("Total_Profit"))
+                        .append('\n');
+                writer.append(line);
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing to the file " + path.toUri());
+            e.printStackTrace();
+        }
+
+        printResults(path);
+    }
+
+    /**
+     * Analyzes statistics to extract from a binary summary
+     * @param binarySummary Binary summary file of the worker
+     * @param outputFile    File to write the analysis results into
+     */
+    public static void analyze(Path binarySummary, String outputFile) {
+        System.out.println("[Consolidator] Analysing binary summary for minimum, maximum, and sum calculations");
+
+        BinarySummary summary;
+        try (FileChannel channel = FileChannel.open(binarySummary, StandardOpenOption.READ)) {
+            summary = BinarySummary.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // It computes the total retailer’s profit, the most and least profitable stores
+        long maxProfit = 0;                 // Amounts are in cents
+        long minProfit = Long.MAX_VALUE;
+        long totalProfit = 0;
+        String mostProfitableStore = null, leastProfitableStore = null;
+        for (int store = 0; store < summary.stores().length; store++) {
+            long profit = summary.storeProfits()[store];
+            totalProfit += profit;
+            if (profit > maxProfit) {
+                maxProfit = profit;
+                mostProfitableStore = summary.stores()[store];
+            }
+            if (profit < minProfit) {
+                minProfit = profit;
+                leastProfitableStore = summary.stores()[store];
+            }
+        }
+
+        // Writing analysis results
+        Path path = Path.of(outputFile);
+        try (FileWriter writer = new FileWriter(outputFile)) {
+            StringBuilder line = new StringBuilder();
+            writer.write("\tData Analysis Results: " + outputFile + ":\n");
+            line.append("\tTotal Retailer's Profit: ");
+            writer.append(Money.appendCents(line, totalProfit).append("$\n"));
+            writer.write("\tMost Profitable Store: " + mostProfitableStore + "\n");
+            writer.write("\tLeast Profitable Store: " + leastProfitableStore + "\n");
+
+            for (int product = 0; product < summary.products().length; product++) {
+                line.setLength(0);
+                line.append("\tProduct: ").append(summary.products()[product])
+                        .append(" \tTotal Quantity: ").append(summary.productQuantities()[product]).append(" units")
+                        .append("\tTotal Sold: ").append(summary.productSold()[product]).append('$')
+                        .append("\tTotal Profit: ");
+                Money.appendCents(line, summary.productProfits()[product]).append("$\n");
+                writer.append(line);
             }
         } catch (IOException e) {
             System.out.println("An error occurred while writing to the file " + path.toUri());
             e.printStackTrace();
         }
 
+        printResults(path);
+    }
+
+    private static void printResults(Path path) {
         try {
             List<String> lines = Files.readAllLines(path);
             for (String fileLine : lines)
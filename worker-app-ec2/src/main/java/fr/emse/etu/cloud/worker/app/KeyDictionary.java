@@ -0,0 +1,109 @@
+package fr.emse.etu.cloud.worker.app;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dictionary encoding of string keys (stores, products) into dense int ids.
+ * <p>
+ * Each distinct key is stored once and identified by its insertion rank, so that sales can reference it by id
+ * and totals can be kept in arrays indexed by id. Keys are indexed by their UTF-8 bytes, so that a parser can look
+ * a key up straight from its input buffer without creating a string.
+ */
+public class KeyDictionary {
+    private final List<String> keys = new ArrayList<>();
+    private byte[][] keyBytes = new byte[16][];
+    private int[] hashes = new int[16];
+    private int[] slots = new int[32];  // Open addressing table of (id + 1), 0 for an empty slot
+
+    /**
+     * Returns the id of a key, adding it to the dictionary if it is not known yet.
+     *
+     * @param key The key to encode
+     * @return The id of the key, between 0 and {@link #size()} - 1
+     */
+    public int encode(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        return encode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the id of a key given as UTF-8 bytes, adding it to the dictionary if it is not known yet.
+     *
+     * @param buffer Buffer holding the key
+     * @param offset Offset of the key in the buffer
+     * @param length Length of the key in bytes
+     * @return The id of the key, between 0 and {@link #size()} - 1
+     */
+    public int encode(byte[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0)
+                return add(slot, hash, Arrays.copyOfRange(buffer, offset, offset + length));
+            if (hashes[id] == hash && Arrays.equals(keyBytes[id], 0, keyBytes[id].length, buffer, offset, offset + length))
+                return id;
+        }
+    }
+
+    /**
+     * @param id An id returned by {@link #encode(String)}
+     * @return The key identified by the id
+     */
+    public String decode(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * @param id An id returned by {@link #encode(String)}
+     * @return The UTF-8 bytes of the key identified by the id, which must not be modified
+     */
+    byte[] decodeBytes(int id) {
+        return keyBytes[id];
+    }
+
+    /**
+     * @return The number of distinct keys
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    private int add(int slot, int hash, byte[] key) {
+        int id = keys.size();
+        if (id == keyBytes.length) {
+            keyBytes = Arrays.copyOf(keyBytes, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        keys.add(new String(key, StandardCharsets.UTF_8));
+        keyBytes[id] = key;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+
+        // Keep the table at most half full
+        if (keys.size() * 2 > slots.length)
+            rehash();
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < keys.size(); id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(byte[] buffer, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++)
+            hash = 31 * hash + buffer[i];
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,68 @@
+package fr.emse.etu.cloud.worker.app;
+
+import java.util.Arrays;
+
+/**
+ * Column-oriented storage of sales.
+ * <p>
+ * Each field of a sale is kept in its own growable primitive array, and stores and products are stored as ids
+ * from a {@link KeyDictionary}. A row costs 28 bytes, instead of an object per sale plus its two strings and its
+ * slot in a list.
+ */
+public class SaleColumns {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] storeIds = new int[INITIAL_CAPACITY];
+    private int[] productIds = new int[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private long[] prices = new long[INITIAL_CAPACITY];   // In cents
+    private long[] profits = new long[INITIAL_CAPACITY];  // In cents
+    private int size;
+
+    /**
+     * Appends a sale as a new row.
+     */
+    public void add(int storeId, int productId, int quantity, long price, long profit) {
+        if (size == storeIds.length)
+            grow();
+        storeIds[size] = storeId;
+        productIds[size] = productId;
+        quantities[size] = quantity;
+        prices[size] = price;
+        profits[size] = profit;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int storeId(int row) {
+        return storeIds[row];
+    }
+
+    public int productId(int row) {
+        return productIds[row];
+    }
+
+    public int quantity(int row) {
+        return quantities[row];
+    }
+
+    public long price(int row) {
+        return prices[row];
+    }
+
+    public long profit(int row) {
+        return profits[row];
+    }
+
+    private void grow() {
+        int capacity = storeIds.length + (storeIds.length >> 1);
+        storeIds = Arrays.copyOf(storeIds, capacity);
+        productIds = Arrays.copyOf(productIds, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        profits = Arrays.copyOf(profits, capacity);
+    }
+}
@@ -1,148 +1,349 @@
 package fr.emse.etu.cloud.worker.app;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
+import fr.emse.etu.cloud.common.Money;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.text.DecimalFormat;
 import java.util.*;
 
 /**
  * This class computes statistics to summarize sales.
+ * <p>
+ * Summaries are written as CSV files, or as a binary file read by the consolidator without parsing any text. The
+ * binary format is made of big-endian values:
+ * <pre>
+ * int   magic 'SSUM'
+ * short version
+ * int   number of stores S, int number of products P
+ * S + P keys (stores then products), each as an unsigned short length followed by its UTF-8 bytes
+ * long[S] profit by store, in cents
+ * long[P] profit by product, in cents
+ * int[P]  quantity by product
+ * int[P]  number of sales by product
+ * </pre>
+ * <p>
+ * A summary is not thread-safe. Partial summaries are updated by a single thread, and the summaries of dates are only
+ * updated and read under the lock of the {@link SummaryStore}, which logs every merge.
  */
 public class SaleSummary {
-    private static final Map<String, SaleSummary> summaries = new HashMap<>();
-    private final List<Sale> allSales = new ArrayList<>();
-    private final Set<String> stores = new HashSet<>();     // A set allows to only keep unique values
-    private final Set<String> products = new HashSet<>();   // which is useful for filtering by set
-    private final DecimalFormat currencyFormat = new DecimalFormat("0.00");
+    public static final int BINARY_MAGIC = 0x5353554D;  // "SSUM"
+    public static final short BINARY_VERSION = 1;
+    // Only the most recently used dates are kept in memory, set with -Dworker.cachedDates and -Dworker.cacheBytes
+    private static final SummaryCache summaries = new SummaryCache(Path.of(SummaryCache.SPILL_FOLDER),
+            Integer.getInteger("worker.cachedDates", 64), Long.getLong("worker.cacheBytes", Long.MAX_VALUE));
+    private static final ThreadLocal<SummaryWriter> WRITERS = ThreadLocal.withInitial(SummaryWriter::new);
+    private final SaleColumns allSales;                          // Only kept when raw sales are retained
+    private final KeyDictionary stores = new KeyDictionary();    // Stores and products are encoded once as ids,
+    private final KeyDictionary products = new KeyDictionary();  // totals are kept in arrays indexed by these ids
+    private long[] storeProfits = new long[16];                   // Amounts are in cents
+    private long[] productProfits = new long[16];
+    private int[] productQuantities = new int[16];
+    private int[] productSold = new int[16];
 
-    public record Sale(String store, String product, int quantity, float price, float profit) {
+    private SaleSummary(boolean retainSales) {
+        this.allSales = retainSales ? new SaleColumns() : null;
     }
 
-    private SaleSummary() {
+    /**
+     * Creates a summary which is not registered under any date, to be merged into a dated one afterwards.
+     *
+     * @param retainSales Whether the summary keeps every raw sale in addition to the totals
+     * @return an empty summary
+     */
+    public static SaleSummary createPartialSummary(boolean retainSales) {
+        return new SaleSummary(retainSales);
     }
 
+    /**
+     * Gets the summary of a date, reloading it if it was evicted from memory, or creating a streaming one if needed:
+     * sales are folded into the totals and then discarded, so the memory used depends on the number of stores and
+     * products, not on the number of sales. The summary of a date is created only once, even when several threads
+     * request it at the same time.
+     *
+     * @param date Date of the summary
+     * @return the summary of the date
+     */
     public static SaleSummary createOrGetSummary(String date) {
-        SaleSummary summary = summaries.get(date);
-        if (summary == null) {
-            summary = new SaleSummary();
-            summaries.put(date, summary);
-        }
-        return summary;
+        return summaries.get(date);
     }
 
     /**
-     * Parses the CSV file to update the summary
+     * @return the cache of the summaries of every date
+     */
+    public static SummaryCache getSummaries() {
+        return summaries;
+    }
+
+    /**
+     * Parses the CSV file to update the summary. Files of at least {@link SalesParser#MAPPED_PARSE_THRESHOLD} bytes are
+     * memory-mapped and parsed by chunks on every core, smaller ones are streamed.
      *
-     * @param file File to parse
-     * @return a fr.emse.etu.cloud.app.SaleSummary
+     * @param summary Summary to update
+     * @param file    File to parse
      */
     public static void parseSales(SaleSummary summary, String file) {
-        try (Reader fileReader = new FileReader(file)) {
-            // Parse records from CSV
-            Iterable<CSVRecord> records = CSVFormat.DEFAULT.builder()
-                    .setDelimiter(';')
-                    .setHeader("Date_Time", "Store", "Product", "Quantity", "Unit_Price", "Unit_Cost", "Unit_Profit", "Total_Price")
-                    .setSkipHeaderRecord(true)
-                    .build()
-                    .parse(fileReader);
-
-            // Iterate over each record in CSV
-            for (CSVRecord record : records) {
-                String store = record.get("Store");
-                String product = record.get("Product");
-                int quantity = Integer.parseInt(record.get("Quantity"));
-                float unitPrice = Float.parseFloat(record.get("Unit_Price"));
-                float unitProfit = Float.parseFloat(record.get("Unit_Profit"));
-
-                // Add record as sale
-                summary.addSale(new Sale(store, product, quantity, unitPrice, unitProfit));
+        try {
+            if (new File(file).length() >= SalesParser.MAPPED_PARSE_THRESHOLD) {
+                // Large files are memory-mapped and parsed by chunks on every core
+                long start = System.nanoTime();
+                long sales = SalesParser.parseMapped(summary, Path.of(file), Runtime.getRuntime().availableProcessors());
+                long elapsed = Math.max(System.nanoTime() - start, 1);
+                System.out.printf("[Worker] Parsed %d sales from %s in %d ms (%d sales/s with mapped byte parser)%n",
+                        sales, file, elapsed / 1_000_000, sales * 1_000_000_000 / elapsed);
+                return;
+            }
+            try (InputStream in = new FileInputStream(file)) {
+                parseSales(summary, in, file);
             }
-
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public static void updateSummaryByStore(SaleSummary summary, String outputFile) {
-        try {
-            // Create the file object from the output file path
-            File file = new File(outputFile);
+    /**
+     * Parses a CSV stream to update the summary, and reports the parsing throughput.
+     *
+     * @param summary Summary to update
+     * @param in      Stream of the CSV file
+     * @param source  Name of the CSV file, for the report
+     */
+    public static void parseSales(SaleSummary summary, InputStream in, String source) throws IOException {
+        long start = System.nanoTime();
+        SalesParser parser = new SalesParser(summary);
+        long sales = parser.parse(in);
+        long elapsed = Math.max(System.nanoTime() - start, 1);
 
-            // Ensure parent directories exist
-            if (!file.getParentFile().exists()) {
-                file.getParentFile().mkdirs();
-            }
+        System.out.printf("[Worker] Parsed %d sales from %s in %d ms (%d sales/s with %s)%n", sales, source,
+                elapsed / 1_000_000, sales * 1_000_000_000 / elapsed, parser.usedCsvFallback() ? "commons-csv" : "byte parser");
+    }
 
-            // Using try-with-resources for FileWriter
-            try (FileWriter fileWriter = new FileWriter(file)) {
-                // Write the header only at the first line
-                fileWriter.write("Store;Total_Profit;\n");
+    /**
+     * @return Whether the summary was written
+     */
+    public static boolean updateSummaryByStore(SaleSummary summary, String outputFile) {
+        Path file = Path.of(outputFile);
+        SummaryWriter writer = WRITERS.get();
 
-                // Write the stores
-                for (String store : summary.stores)
-                    fileWriter.write(store + ';' + summary.totalProfitByStore(store) + "$;\n");
+        // Write the header only at the first line
+        StringBuilder text = writer.start().append("Store;Total_Profit;\n");
+        // Write the stores
+        for (int store = 0; store < summary.stores.size(); store++) {
+            text.append(summary.stores.decode(store)).append(';');
+            Money.appendCents(text, summary.storeProfits[store]).append("$;\n");
+        }
 
-                System.out.println("[Worker] Data per store successfully updated into " + Path.of(file.toURI()).toUri());
-            }
+        try {
+            writer.writeTo(file);
+            System.out.println("[Worker] Data per store successfully updated into " + file.toUri());
+            return true;
         } catch (IOException e) {
             System.err.println("[Worker] An error occurred while writing to the file.");
             e.printStackTrace();
+            return false;
         }
     }
 
-    public static void updateSummaryByProduct(SaleSummary summary, String outputFile) {
-        Path filepath = Path.of(outputFile);
+    /**
+     * @return Whether the summary was written
+     */
+    public static boolean updateSummaryByProduct(SaleSummary summary, String outputFile) {
+        Path file = Path.of(outputFile);
+        SummaryWriter writer = WRITERS.get();
 
-        try (FileWriter fileWriter = new FileWriter(outputFile)) {
+        // Write the header only at the first line
+        StringBuilder text = writer.start().append("Product;Total_Profit;Total_Quantity;Total_Sold\n");
+        // Write the summary per product
+        for (int product = 0; product < summary.products.size(); product++) {
+            text.append(summary.products.decode(product)).append(';');
+            Money.appendCents(text, summary.productProfits[product]).append("$;")
+                    .append(summary.productQuantities[product]).append(" units;")
+                    .append('"').append(summary.productSold[product]).append("$\";\n");
+        }
 
-            // Write the header only at the first line
-            fileWriter.write("Product;Total_Profit;Total_Quantity;Total_Sold\n");
-            // Write the summary per product
-            for (String product : summary.products)
-                fileWriter.write(product + ";" + summary.totalProfitByProduct(product) + "$;"
-                        + summary.totalQuantityByProduct(product) + " units;"
-                        + "\"" + summary.totalSoldByProduct(product) + "$\";\n");
+        try {
+            writer.writeTo(file);
+            System.out.println("[Worker] Data per product successfully updated into " + file.toUri());
+            return true;
+        } catch (IOException e) {
+            System.err.println("[Worker] An error occurred while writing to the file.");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return Whether the summary was written
+     */
+    public static boolean updateSummaryBinary(SaleSummary summary, String outputFile) {
+        Path file = Path.of(outputFile);
+        SummaryWriter writer = WRITERS.get();
+        summary.writeBinary(writer.startBinary(summary.binarySize()));
 
-            System.out.println("[Worker] Data per product successfully updated into " + filepath.toUri());
+        try {
+            writer.writeBinaryTo(file);
+            System.out.println("[Worker] Binary summary successfully updated into " + file.toUri());
+            return true;
         } catch (IOException e) {
             System.err.println("[Worker] An error occurred while writing to the file.");
             e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of bytes of the summary in the binary format
+     */
+    int binarySize() {
+        int size = Integer.BYTES + Short.BYTES + 2 * Integer.BYTES
+                + stores.size() * (Long.BYTES + Short.BYTES) + products.size() * (Long.BYTES + 2 * Integer.BYTES + Short.BYTES);
+        for (int store = 0; store < stores.size(); store++)
+            size += stores.decodeBytes(store).length;
+        for (int product = 0; product < products.size(); product++)
+            size += products.decodeBytes(product).length;
+        return size;
+    }
+
+    /**
+     * Writes the totals of the summary in the binary format.
+     *
+     * @param buffer Buffer with at least {@link #binarySize()} bytes remaining
+     */
+    void writeBinary(ByteBuffer buffer) {
+        int storeCount = stores.size();
+        int productCount = products.size();
+        buffer.putInt(BINARY_MAGIC).putShort(BINARY_VERSION).putInt(storeCount).putInt(productCount);
+        // Write the dictionary of keys
+        for (int store = 0; store < storeCount; store++) {
+            byte[] key = stores.decodeBytes(store);
+            buffer.putShort((short) key.length).put(key);
+        }
+        for (int product = 0; product < productCount; product++) {
+            byte[] key = products.decodeBytes(product);
+            buffer.putShort((short) key.length).put(key);
+        }
+        // Write the columns of totals
+        buffer.asLongBuffer().put(storeProfits, 0, storeCount);
+        buffer.position(buffer.position() + storeCount * Long.BYTES);
+        buffer.asLongBuffer().put(productProfits, 0, productCount);
+        buffer.position(buffer.position() + productCount * Long.BYTES);
+        buffer.asIntBuffer().put(productQuantities, 0, productCount).put(productSold, 0, productCount);
+        buffer.position(buffer.position() + 2 * productCount * Integer.BYTES);
+    }
+
+    /**
+     * Reads the totals of a summary in the binary format.
+     *
+     * @param buffer Buffer positioned at the start of a binary summary, which is left after its end
+     * @return a partial summary with these totals, which does not retain sales
+     * @throws IllegalArgumentException If the buffer does not hold a binary summary of a supported version
+     */
+    static SaleSummary readBinary(ByteBuffer buffer) {
+        if (buffer.getInt() != BINARY_MAGIC)
+            throw new IllegalArgumentException("Not a binary summary");
+        short version = buffer.getShort();
+        if (version != BINARY_VERSION)
+            throw new IllegalArgumentException("Unsupported binary summary version " + version);
+
+        SaleSummary summary = new SaleSummary(false);
+        int storeCount = buffer.getInt();
+        int productCount = buffer.getInt();
+        // Read the dictionary of keys, which get the same ids as in the written summary
+        byte[] key = new byte[0xFFFF];
+        for (int store = 0; store < storeCount; store++) {
+            int length = buffer.getShort() & 0xFFFF;
+            buffer.get(key, 0, length);
+            summary.stores.encode(key, 0, length);
         }
+        for (int product = 0; product < productCount; product++) {
+            int length = buffer.getShort() & 0xFFFF;
+            buffer.get(key, 0, length);
+            summary.products.encode(key, 0, length);
+        }
+        // Read the columns of totals
+        summary.ensureStoreCapacity(storeCount);
+        summary.ensureProductCapacity(productCount);
+        buffer.asLongBuffer().get(summary.storeProfits, 0, storeCount);
+        buffer.position(buffer.position() + storeCount * Long.BYTES);
+        buffer.asLongBuffer().get(summary.productProfits, 0, productCount);
+        buffer.position(buffer.position() + productCount * Long.BYTES);
+        buffer.asIntBuffer().get(summary.productQuantities, 0, productCount).get(summary.productSold, 0, productCount);
+        buffer.position(buffer.position() + 2 * productCount * Integer.BYTES);
+        return summary;
     }
 
-    private void addSale(Sale sale) {
-        allSales.add(sale);
-        products.add(sale.product());
-        stores.add(sale.store());
+    // Sales are added by a parser to a partial summary, whose ids are only valid in that summary
+    int encodeStore(byte[] buffer, int offset, int length) {
+        return stores.encode(buffer, offset, length);
     }
 
-    private String totalProfitByStore(String store) {
-        return currencyFormat.format(allSales.stream()
-                .filter(t -> t.store().equals(store))
-                .mapToDouble(Sale::price)
-                .sum());
+    int encodeProduct(byte[] buffer, int offset, int length) {
+        return products.encode(buffer, offset, length);
     }
 
-    private int totalQuantityByProduct(String product) {
-        return allSales.stream()
-                .filter(t -> t.product().equals(product))
-                .mapToInt(Sale::quantity)
-                .sum();
+    void addSale(String store, String product, int quantity, long price, long profit) {
+        addSale(stores.encode(store), products.encode(product), quantity, price, profit);
     }
 
-    private String totalProfitByProduct(String product) {
-        return currencyFormat.format(allSales.stream()
-                .filter(t -> t.product().equals(product))
-                .mapToDouble(t -> t.quantity() * t.profit())
-                .sum());
+    void addSale(int storeId, int productId, int quantity, long price, long profit) {
+        if (allSales != null)
+            allSales.add(storeId, productId, quantity, price, profit);
+
+        ensureStoreCapacity(storeId);
+        storeProfits[storeId] += price;
+
+        ensureProductCapacity(productId);
+        productProfits[productId] += quantity * profit;
+        productQuantities[productId] += quantity;
+        productSold[productId]++;
     }
 
-    private int totalSoldByProduct(String product) {
-        return (int) allSales.stream()
-                .filter(t -> t.product().equals(product))
-                .count();
+    /**
+     * Adds the totals of another summary to this one. Raw sales are added too when both summaries retain them.
+     * Merging is associative, so partial summaries can be merged in any grouping.
+     *
+     * @param other Summary to add, which is left unchanged
+     */
+    public void merge(SaleSummary other) {
+        int[] storeIds = new int[other.stores.size()];
+        for (int store = 0; store < storeIds.length; store++) {
+            int storeId = storeIds[store] = stores.encode(other.stores.decode(store));
+            ensureStoreCapacity(storeId);
+            storeProfits[storeId] += other.storeProfits[store];
+        }
+
+        int[] productIds = new int[other.products.size()];
+        for (int product = 0; product < productIds.length; product++) {
+            int productId = productIds[product] = products.encode(other.products.decode(product));
+            ensureProductCapacity(productId);
+            productProfits[productId] += other.productProfits[product];
+            productQuantities[productId] += other.productQuantities[product];
+            productSold[productId] += other.productSold[product];
+        }
+
+        if (allSales != null && other.allSales != null) {
+            SaleColumns sales = other.allSales;
+            for (int row = 0; row < sales.size(); row++)
+                allSales.add(storeIds[sales.storeId(row)], productIds[sales.productId(row)], sales.quantity(row),
+                        sales.price(row), sales.profit(row));
+        }
+    }
+
+    boolean retainsSales() {
+        return allSales != null;
+    }
+
+    private void ensureStoreCapacity(int storeId) {
+        if (storeId >= storeProfits.length)
+            storeProfits = Arrays.copyOf(storeProfits, Math.max(storeId + 1, storeProfits.length * 2));
+    }
+
+    private void ensureProductCapacity(int productId) {
+        if (productId >= productProfits.length) {
+            int capacity = Math.max(productId + 1, productProfits.length * 2);
+            productProfits = Arrays.copyOf(productProfits, capacity);
+            productQuantities = Arrays.copyOf(productQuantities, capacity);
+            productSold = Arrays.copyOf(productSold, capacity);
+        }
     }
 }
@@ -0,0 +1,345 @@
+package fr.emse.etu.cloud.worker.app;
+
+import fr.emse.etu.cloud.common.Money;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parser of sales CSV files into a {@link SaleSummary}.
+ * <p>
+ * Sales files have a fixed layout of 8 columns delimited by ';'. When the header of a file matches it, lines are
+ * scanned as bytes: fields are located by position, quantities and amounts of cents are parsed in place and stores
+ * and products are looked up in the summary dictionaries without creating any string. Files with another header, such
+ * as reordered or additional columns, are parsed with commons-csv instead, which finds the columns by their name in
+ * the header of the file.
+ * <p>
+ * Large local files can also be memory-mapped and split into chunks of whole lines, which are parsed in parallel
+ * into partial summaries and then merged.
+ */
+public class SalesParser {
+    public static final String[] HEADER = {"Date_Time", "Store", "Product", "Quantity", "Unit_Price", "Unit_Cost", "Unit_Profit", "Total_Price"};
+    private static final byte[] HEADER_LINE = String.join(";", HEADER).getBytes(StandardCharsets.UTF_8);
+    // The header is read from the first line of the file
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.builder()
+            .setDelimiter(';')
+            .setHeader()
+            .setSkipHeaderRecord(true)
+            .build();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    public static final long MAPPED_PARSE_THRESHOLD = 16 * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+
+    private final SaleSummary summary;
+    private final int[] fieldBounds = new int[HEADER.length + 1];
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int lineNumber;
+    private long sales;
+    private boolean csvFallback;
+
+    public SalesParser(SaleSummary summary) {
+        this.summary = summary;
+    }
+
+    /**
+     * Parses all the sales of an input stream into the summary.
+     *
+     * @param in Stream of a sales CSV file, header included
+     * @return the number of sales parsed
+     * @throws IOException If the stream cannot be read
+     */
+    public long parse(InputStream in) throws IOException {
+        return parse(in, true);
+    }
+
+    /**
+     * Parses all the sales of an input stream into the summary.
+     *
+     * @param in     Stream of sales CSV lines
+     * @param header Whether the stream starts with the header line
+     * @return the number of sales parsed
+     * @throws IOException If the stream cannot be read
+     */
+    public long parse(InputStream in, boolean header) throws IOException {
+        int start = 0;
+        int end = 0;
+
+        while (true) {
+            // Process every complete line in the buffer
+            int newline;
+            while ((newline = indexOf(buffer, (byte) '\n', start, end)) >= 0) {
+                if (header) {
+                    header = false;
+                    if (!isHeader(start, newline)) {
+                        parseCsv(new SequenceInputStream(new ByteArrayInputStream(buffer, start, end - start), in));
+                        return sales;
+                    }
+                } else {
+                    parseLine(start, newline);
+                }
+                start = newline + 1;
+            }
+
+            // Move the incomplete line at the beginning of the buffer before reading more
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0)
+                break;
+            end += read;
+        }
+
+        // Last line without a line break
+        if (end > start) {
+            if (header && !isHeader(start, end))
+                parseCsv(new ByteArrayInputStream(buffer, start, end - start));
+            else if (!header)
+                parseLine(start, end);
+        }
+        return sales;
+    }
+
+    /**
+     * Parses a local sales file by memory-mapping it and parsing chunks of lines in parallel on the fork-join pool.
+     * Each chunk is parsed into its own partial summary, and the partial summaries are merged into the summary in
+     * the order of the file.
+     *
+     * @param summary     Summary to update
+     * @param file        Sales CSV file
+     * @param parallelism Minimum number of chunks to split the file into
+     * @return the number of sales parsed
+     * @throws IOException If the file cannot be read
+     */
+    public static long parseMapped(SaleSummary summary, Path file, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = headerEnd(channel);
+            if (dataStart < 0) {
+                // Files with another header are read as a stream by commons-csv
+                return new SalesParser(summary).parse(Channels.newInputStream(channel.position(0)));
+            }
+
+            // Split the data into chunks ending on a line break
+            int chunks = (int) Math.max(parallelism, (size - dataStart) / MAX_CHUNK_SIZE + 1);
+            long[] bounds = new long[chunks + 1];
+            bounds[0] = dataStart;
+            bounds[chunks] = size;
+            for (int chunk = 1; chunk < chunks; chunk++)
+                bounds[chunk] = nextLine(channel, Math.max(bounds[chunk - 1], dataStart + (size - dataStart) * chunk / chunks));
+
+            List<ForkJoinTask<SalesParser>> tasks = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                long chunkStart = bounds[chunk];
+                long chunkSize = bounds[chunk + 1] - chunkStart;
+                if (chunkSize > 0)
+                    tasks.add(ForkJoinTask.adapt(() -> {
+                        SalesParser parser = new SalesParser(SaleSummary.createPartialSummary(summary.retainsSales()));
+                        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkSize);
+                        parser.parse(new ByteBufferInputStream(mapped), false);
+                        return parser;
+                    }));
+            }
+
+            long sales = 0;
+            for (ForkJoinTask<SalesParser> task : ForkJoinTask.invokeAll(tasks)) {
+                SalesParser parser = task.join();
+                summary.merge(parser.summary);
+                sales += parser.sales;
+            }
+            return sales;
+        }
+    }
+
+    /**
+     * @return the offset following the header line, or -1 if the file does not start with the expected header
+     */
+    private static long headerEnd(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(HEADER_LINE.length + 2);
+        channel.read(head, 0);
+        byte[] bytes = head.array();
+        int newline = indexOf(bytes, (byte) '\n', 0, head.position());
+        if (newline < 0)
+            return -1;
+        int end = newline > 0 && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+        return Arrays.equals(bytes, 0, end, HEADER_LINE, 0, HEADER_LINE.length) ? newline + 1 : -1;
+    }
+
+    /**
+     * @return the offset of the line following a position, or the size of the file if there is none
+     */
+    private static long nextLine(FileChannel channel, long position) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        while (position < channel.size()) {
+            window.clear();
+            int read = channel.read(window, position);
+            int newline = indexOf(window.array(), (byte) '\n', 0, read);
+            if (newline >= 0)
+                return position + newline + 1;
+            position += read;
+        }
+        return channel.size();
+    }
+
+    /**
+     * @return Whether the file did not have the expected header and was parsed with commons-csv
+     */
+    public boolean usedCsvFallback() {
+        return csvFallback;
+    }
+
+    private boolean isHeader(int start, int end) {
+        if (end > start && buffer[end - 1] == '\r')
+            end--;
+        return Arrays.equals(buffer, start, end, HEADER_LINE, 0, HEADER_LINE.length);
+    }
+
+    private void parseLine(int start, int end) throws IOException {
+        lineNumber++;
+        if (end > start && buffer[end - 1] == '\r')
+            end--;
+        if (end == start)
+            return; // Skip empty lines
+        if (indexOf(buffer, (byte) '"', start, end) >= 0) {
+            // Quoted fields are left to commons-csv
+            parseQuotedLine(start, end);
+            return;
+        }
+
+        // Locate the 8 fields by their delimiters
+        int[] bounds = fieldBounds;  // Offset of each field, plus the offset after the last one
+        int field = 0;
+        bounds[0] = start;
+        for (int i = start; i < end && field < HEADER.length; i++) {
+            if (buffer[i] == ';')
+                bounds[++field] = i + 1;
+        }
+        if (field < HEADER.length - 1)
+            throw new IllegalArgumentException("Sale line " + lineNumber + " has " + (field + 1) + " fields instead of " + HEADER.length);
+        if (field == HEADER.length - 1)
+            bounds[HEADER.length] = end + 1;
+
+        int storeId = summary.encodeStore(buffer, bounds[1], bounds[2] - bounds[1] - 1);
+        int productId = summary.encodeProduct(buffer, bounds[2], bounds[3] - bounds[2] - 1);
+        int quantity = parseInt(bounds[3], bounds[4] - 1);
+        long unitPrice = parseCents(bounds[4], bounds[5] - 1);
+        long unitProfit = parseCents(bounds[6], bounds[7] - 1);
+
+        summary.addSale(storeId, productId, quantity, unitPrice, unitProfit);
+        sales++;
+    }
+
+    private void parseQuotedLine(int start, int end) throws IOException {
+        String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        for (CSVRecord record : CSVFormat.DEFAULT.builder().setDelimiter(';').build().parse(new StringReader(line))) {
+            summary.addSale(record.get(1), record.get(2), Integer.parseInt(record.get(3)),
+                    Money.parseCents(record.get(4)), Money.parseCents(record.get(6)));
+            sales++;
+        }
+    }
+
+    private void parseCsv(InputStream in) throws IOException {
+        csvFallback = true;
+        Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        for (CSVRecord record : CSV_FORMAT.parse(reader)) {
+            String store = record.get("Store");
+            String product = record.get("Product");
+            int quantity = Integer.parseInt(record.get("Quantity"));
+            long unitPrice = Money.parseCents(record.get("Unit_Price"));
+            long unitProfit = Money.parseCents(record.get("Unit_Profit"));
+
+            // Add record as sale
+            summary.addSale(store, product, quantity, unitPrice, unitProfit);
+            sales++;
+        }
+    }
+
+    private int parseInt(int start, int end) {
+        boolean negative = end > start && buffer[start] == '-';
+        if (end == start || negative && end == start + 1)
+            return Integer.parseInt(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+        int value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || i - start > 9)
+                return Integer.parseInt(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal amount such as "-123.45" in place, like {@link Money#parseCents(CharSequence)}, which parses the
+     * amounts this loop does not handle.
+     */
+    private long parseCents(int start, int end) {
+        boolean negative = end > start && buffer[start] == '-';
+        long cents = 0;
+        int decimals = -1;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || decimals == 2 || cents > Long.MAX_VALUE / 1000)
+                return Money.parseCents(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+            cents = cents * 10 + digit;
+            if (decimals >= 0)
+                decimals++;
+        }
+        if (end == start || end == start + 1 && (negative || decimals == 0))
+            return Money.parseCents(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+        cents = decimals <= 0 ? cents * 100 : decimals == 1 ? cents * 10 : cents;
+        return negative ? -cents : cents;
+    }
+
+    private static int indexOf(byte[] buffer, byte value, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (buffer[i] == value)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Reads a memory-mapped chunk as a stream.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining())
+                return -1;
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package fr.emse.etu.cloud.worker.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Bounded cache of the summaries by date.
+ * <p>
+ * At most a number of summaries, and optionally a number of bytes of summaries, are kept in memory. When a bound is
+ * exceeded, the least recently used summaries are evicted: they are written in the binary format of
+ * {@link SaleSummary} into a spill folder, and are read back transparently when their date is requested again, for
+ * instance when a late sales file of an old date arrives. The size of a summary is estimated by the size of its binary
+ * form. Raw sales retained by a summary are not spilled, so a reloaded summary only has the totals.
+ * <p>
+ * Summaries are only evicted when the cache is {@linkplain #trim() trimmed}, between updates, so that a summary is
+ * never evicted while a thread is updating it. Requesting a summary is atomic, so that concurrent requests for a date
+ * get the same summary, but the summaries themselves are not thread-safe.
+ */
+public class SummaryCache {
+    public static final String SPILL_FOLDER = "data/worker/spill/";
+    private static final String SPILL_EXTENSION = ".bin";
+
+    private final Path folder;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final SummaryWriter writer = new SummaryWriter();
+    private final LinkedHashMap<String, SaleSummary> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> spilled = new HashSet<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long reloads;
+
+    /**
+     * @param folder     Folder where evicted summaries are written, emptied of the summaries of a previous run
+     * @param maxEntries Maximum number of summaries in memory
+     * @param maxBytes   Maximum number of bytes of summaries in memory, {@link Long#MAX_VALUE} for no limit
+     */
+    public SummaryCache(Path folder, int maxEntries, long maxBytes) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("A summary cache needs at least 1 entry, not " + maxEntries);
+        this.folder = folder;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        deleteSpilledFiles();
+    }
+
+    /**
+     * Gets the summary of a date, reloading it if it was evicted, or creating it if the date is unknown.
+     *
+     * @param date Date of the summary
+     * @return the summary of the date
+     */
+    public synchronized SaleSummary get(String date) {
+        SaleSummary summary = resident.get(date);
+        if (summary != null) {
+            hits++;
+            return summary;
+        }
+
+        misses++;
+        summary = spilled.remove(date) ? reload(date) : SaleSummary.createPartialSummary(false);
+        resident.put(date, summary);
+        return summary;
+    }
+
+    /**
+     * Evicts the least recently used summaries until the bounds of the cache are met. Summaries returned by the cache
+     * must no longer be updated, until they are requested again.
+     */
+    public synchronized void trim() {
+        // The size of the summaries is computed once, then the size of each evicted summary is subtracted from it
+        long bytes = maxBytes != Long.MAX_VALUE ? residentBytes() : 0;
+        // The most recently used summary is never evicted
+        Iterator<Map.Entry<String, SaleSummary>> eldest = resident.entrySet().iterator();
+        while (resident.size() > 1 && (resident.size() > maxEntries || bytes > maxBytes)) {
+            Map.Entry<String, SaleSummary> entry = eldest.next();
+            SaleSummary summary = entry.getValue();
+            spill(entry.getKey(), summary);
+            bytes -= summary.binarySize();
+            eldest.remove();
+            spilled.add(entry.getKey());
+            evictions++;
+        }
+    }
+
+    /**
+     * @return the dates of every summary, in memory or spilled
+     */
+    public synchronized Set<String> dates() {
+        Set<String> dates = new TreeSet<>(resident.keySet());
+        dates.addAll(spilled);
+        return dates;
+    }
+
+    /**
+     * Returns the summary of a date in the binary format, without reloading it nor changing its recency.
+     *
+     * @param date A date returned by {@link #dates()}
+     * @return the binary summary of the date
+     * @throws IOException If the spilled summary cannot be read
+     */
+    synchronized byte[] binary(String date) throws IOException {
+        SaleSummary summary = resident.get(date);
+        if (summary == null)
+            return Files.readAllBytes(spillFile(date));
+        ByteBuffer buffer = ByteBuffer.allocate(summary.binarySize());
+        summary.writeBinary(buffer);
+        return buffer.array();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getReloads() {
+        return reloads;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d summaries in memory, %d spilled, %d hits, %d misses, %d evictions, %d reloads",
+                resident.size(), spilled.size(), hits, misses, evictions, reloads);
+    }
+
+    private long residentBytes() {
+        long bytes = 0;
+        for (SaleSummary summary : resident.values())
+            bytes += summary.binarySize();
+        return bytes;
+    }
+
+    private void spill(String date, SaleSummary summary) {
+        summary.writeBinary(writer.startBinary(summary.binarySize()));
+        try {
+            writer.writeBinaryTo(spillFile(date));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        System.out.println("[Worker] Summary of " + date + " evicted into " + spillFile(date).toUri());
+    }
+
+    private SaleSummary reload(String date) {
+        Path file = spillFile(date);
+        try {
+            SaleSummary summary = SaleSummary.readBinary(ByteBuffer.wrap(Files.readAllBytes(file)));
+            Files.delete(file);
+            reloads++;
+            System.out.println("[Worker] Summary of " + date + " reloaded from " + file.toUri());
+            return summary;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path spillFile(String date) {
+        return folder.resolve(date + SPILL_EXTENSION);
+    }
+
+    private void deleteSpilledFiles() {
+        if (!Files.isDirectory(folder))
+            return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + SPILL_EXTENSION)) {
+            for (Path file : files)
+                Files.delete(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
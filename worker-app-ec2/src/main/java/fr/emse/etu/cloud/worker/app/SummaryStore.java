@@ -0,0 +1,263 @@
+package fr.emse.etu.cloud.worker.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-recoverable store of the per-date summaries of the worker.
+ * <p>
+ * Every sales file applied to a summary is appended to a log, with the partial summary of the file, before its SQS
+ * message is deleted. Every {@link #SNAPSHOT_INTERVAL} files, the summaries of all dates are written to a snapshot
+ * and the log is emptied. A restarted worker maps the snapshot and the log to rebuild its summaries, instead of
+ * downloading and parsing every sales file again, and skips the files it has already applied.
+ * <p>
+ * The snapshot is made of big-endian values:
+ * <pre>
+ * int   magic 'SSNP'
+ * short version
+ * long  sequence number of the last file in the snapshot
+ * int   number of files applied F, then F file keys
+ * int   number of dates D, then for each date: its key followed by its binary summary
+ * </pre>
+ * Keys are an unsigned short length followed by UTF-8 bytes, and binary summaries use the format of
+ * {@link SaleSummary}. Each record of the log is an int length and an int CRC32 of the payload, which is made of the
+ * sequence number of the file, the date key, the file key and the binary partial summary of the file. A record torn
+ * by a crash fails its checksum and ends the recovery.
+ */
+public class SummaryStore implements Closeable {
+    public static final int SNAPSHOT_INTERVAL = 100;
+    private static final int SNAPSHOT_MAGIC = 0x53534E50;  // "SSNP"
+    private static final short SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_FILE = "applied.log";
+
+    private final Path snapshotFile;
+    private final FileChannel log;
+    private final SummaryCache summaries;
+    private final Set<String> appliedFiles = new HashSet<>();
+    private final CRC32 crc = new CRC32();
+    private long sequence;
+    private int loggedFiles;
+
+    private SummaryStore(Path folder, SummaryCache summaries) throws IOException {
+        Files.createDirectories(folder);
+        this.summaries = summaries;
+        this.snapshotFile = folder.resolve(SNAPSHOT_FILE);
+        this.log = FileChannel.open(folder.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Opens the store kept in a folder, and restores its summaries into the summaries of {@link SaleSummary}.
+     *
+     * @param folder Folder of the store, created if needed
+     * @return the opened store
+     * @throws IOException If the store cannot be read
+     */
+    public static SummaryStore open(Path folder) throws IOException {
+        return open(folder, SaleSummary.getSummaries());
+    }
+
+    /**
+     * Opens the store kept in a folder, and restores its summaries into a cache of summaries.
+     *
+     * @param folder    Folder of the store, created if needed
+     * @param summaries Summaries to restore and to snapshot
+     * @return the opened store
+     * @throws IOException If the store cannot be read
+     */
+    static SummaryStore open(Path folder, SummaryCache summaries) throws IOException {
+        long start = System.nanoTime();
+        SummaryStore store = new SummaryStore(folder, summaries);
+        store.recover();
+        System.out.printf("[Worker] Recovered %d summaries and %d applied files from %s in %d ms%n",
+                summaries.dates().size(), store.appliedFiles.size(), folder.toUri(),
+                (System.nanoTime() - start) / 1_000_000);
+        return store;
+    }
+
+    /**
+     * @param file Key of a sales file
+     * @return Whether the sales of the file are already in the summaries
+     */
+    public synchronized boolean isApplied(String file) {
+        return appliedFiles.contains(file);
+    }
+
+    /**
+     * Durably logs the partial summary of a sales file, then merges it into the summary of its date, and takes a
+     * snapshot every {@link #SNAPSHOT_INTERVAL} files. The partial summary is merged only once logged, so that a file
+     * whose log failed is not counted twice when it is applied again, and before the snapshot, so that the snapshot
+     * holds every file it marks as applied. A snapshot that cannot be written is taken again after the next file.
+     *
+     * @param date    Date of the summary
+     * @param file    Key of the sales file
+     * @param partial Partial summary of the file
+     * @throws IOException If the log cannot be written, in which case the partial summary is not merged
+     */
+    public synchronized void apply(String date, String file, SaleSummary partial) throws IOException {
+        append(date, file, partial);
+        summaries.get(date).merge(partial);
+        if (++loggedFiles >= SNAPSHOT_INTERVAL) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                // The file is already logged and merged, so it is still recovered from the log
+                System.err.println("[Worker] Could not checkpoint the summaries, tried again after the next file: " + e);
+            }
+        }
+    }
+
+    private void append(String date, String file, SaleSummary partial) throws IOException {
+        byte[] dateKey = date.getBytes(StandardCharsets.UTF_8);
+        byte[] fileKey = file.getBytes(StandardCharsets.UTF_8);
+        int payload = Long.BYTES + Short.BYTES + dateKey.length + Short.BYTES + fileKey.length + partial.binarySize();
+
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + payload);
+        record.putInt(payload).putInt(0)
+                .putLong(++sequence)
+                .putShort((short) dateKey.length).put(dateKey)
+                .putShort((short) fileKey.length).put(fileKey);
+        partial.writeBinary(record);
+        crc.reset();
+        crc.update(record.array(), 2 * Integer.BYTES, payload);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+
+        record.flip();
+        log.position(log.size());
+        while (record.hasRemaining())
+            log.write(record);
+        log.force(false);
+        appliedFiles.add(file);
+    }
+
+    /**
+     * Writes the summaries of all dates to a new snapshot, which atomically replaces the previous one, then empties
+     * the log.
+     *
+     * @throws IOException If the snapshot cannot be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        // Summaries evicted from memory are copied from their spill files, without being reloaded
+        Map<String, byte[]> binaries = new TreeMap<>();
+        for (String date : summaries.dates())
+            binaries.put(date, summaries.binary(date));
+        int size = Short.BYTES + Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+        for (String file : appliedFiles)
+            size += Short.BYTES + file.getBytes(StandardCharsets.UTF_8).length;
+        for (Map.Entry<String, byte[]> binary : binaries.entrySet())
+            size += Short.BYTES + binary.getKey().getBytes(StandardCharsets.UTF_8).length + binary.getValue().length;
+
+        ByteBuffer snapshot = ByteBuffer.allocate(size);
+        snapshot.putInt(SNAPSHOT_MAGIC).putShort(SNAPSHOT_VERSION).putLong(sequence);
+        snapshot.putInt(appliedFiles.size());
+        for (String file : appliedFiles)
+            putKey(snapshot, file);
+        snapshot.putInt(binaries.size());
+        for (Map.Entry<String, byte[]> binary : binaries.entrySet()) {
+            putKey(snapshot, binary.getKey());
+            snapshot.put(binary.getValue());
+        }
+        snapshot.flip();
+
+        Path temporary = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining())
+                channel.write(snapshot);
+            channel.force(false);
+        }
+        try {
+            Files.move(temporary, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Log records up to the sequence of the snapshot are skipped by the recovery, even if the truncation is lost
+        log.truncate(0);
+        log.force(false);
+        loggedFiles = 0;
+        System.out.println("[Worker] Summaries checkpointed into " + snapshotFile.toUri());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    private void recover() throws IOException {
+        if (Files.exists(snapshotFile)) {
+            try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+                ByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (snapshot.getInt() != SNAPSHOT_MAGIC || snapshot.getShort() != SNAPSHOT_VERSION)
+                    throw new IOException("Unsupported summary snapshot " + snapshotFile);
+                sequence = snapshot.getLong();
+                for (int files = snapshot.getInt(); files > 0; files--)
+                    appliedFiles.add(getKey(snapshot));
+                for (int dates = snapshot.getInt(); dates > 0; dates--) {
+                    String date = getKey(snapshot);
+                    summaries.get(date).merge(SaleSummary.readBinary(snapshot));
+                    summaries.trim();
+                }
+            }
+        }
+
+        long size = log.size();
+        if (size == 0)
+            return;
+        ByteBuffer records = log.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int validEnd = 0;
+        while (records.remaining() >= 2 * Integer.BYTES) {
+            int payload = records.getInt();
+            int checksum = records.getInt();
+            if (payload < 0 || payload > records.remaining())
+                break;
+            crc.reset();
+            crc.update(records.slice(records.position(), payload));
+            if ((int) crc.getValue() != checksum)
+                break;
+
+            long recordSequence = records.getLong();
+            String date = getKey(records);
+            String file = getKey(records);
+            SaleSummary partial = SaleSummary.readBinary(records);
+            if (recordSequence > sequence) {
+                summaries.get(date).merge(partial);
+                summaries.trim();
+                appliedFiles.add(file);
+                sequence = recordSequence;
+                loggedFiles++;
+            }
+            validEnd = records.position();
+        }
+        // Drop a record torn at the end of the log, so that the next records are appended after the valid ones
+        if (validEnd < size) {
+            System.err.println("[Worker] Dropping " + (size - validEnd) + " bytes of a torn record at the end of the log");
+            log.truncate(validEnd);
+        }
+    }
+
+    private static void putKey(ByteBuffer buffer, String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getKey(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+package fr.emse.etu.cloud.worker.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output stage of the summary files.
+ * <p>
+ * A summary is built as text in a reused buffer and encoded into a reused byte buffer, or built directly in the byte
+ * buffer for binary summaries. It is then written with a single channel write into a temporary file, which atomically
+ * replaces the summary file. Readers of a summary file thus never see it half-written. A writer is not thread-safe.
+ */
+public class SummaryWriter {
+    private final StringBuilder text = new StringBuilder(4096);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer bytes = ByteBuffer.allocate(4096);
+
+    /**
+     * @return the emptied text buffer, to build the next summary in
+     */
+    public StringBuilder start() {
+        text.setLength(0);
+        return text;
+    }
+
+    /**
+     * @param capacity Number of bytes of the binary summary
+     * @return the emptied byte buffer, to build the next binary summary in
+     */
+    public ByteBuffer startBinary(int capacity) {
+        if (bytes.capacity() < capacity)
+            bytes = ByteBuffer.allocate(capacity);
+        return bytes.clear();
+    }
+
+    /**
+     * Writes the text buffer into a file, replacing the file atomically.
+     *
+     * @param file File to write
+     * @throws IOException If the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        encode();
+        write(file);
+    }
+
+    /**
+     * Writes the byte buffer into a file, replacing the file atomically.
+     *
+     * @param file File to write
+     * @throws IOException If the file cannot be written
+     */
+    public void writeBinaryTo(Path file) throws IOException {
+        bytes.flip();
+        write(file);
+    }
+
+    private void write(Path file) throws IOException {
+        Path folder = file.toAbsolutePath().getParent();
+        Files.createDirectories(folder);
+        Path temporary = folder.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void encode() {
+        // A UTF-16 char never takes more than 3 bytes in UTF-8
+        if (bytes.capacity() < text.length() * 3)
+            bytes = ByteBuffer.allocate(text.length() * 3);
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+    }
+}
@@ -1,12 +1,16 @@
 package fr.emse.etu.cloud.worker.app;
 
-import fr.emse.etu.cloud.worker.s3.S3DownloadObject;
-import fr.emse.etu.cloud.worker.s3.S3UploadObject;
-import fr.emse.etu.cloud.worker.sqs.*;
+import fr.emse.etu.cloud.common.s3.S3CheckObject;
+import fr.emse.etu.cloud.common.s3.S3DownloadObject;
+import fr.emse.etu.cloud.common.s3.S3UploadObject;
+import fr.emse.etu.cloud.common.sqs.*;
 import software.amazon.awssdk.services.sqs.model.Message;
 
-import java.io.File;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * The application When receiving an SQS Message in `INBOX` queue, downloads sales files from S3, summarizes sales, and
@@ -24,47 +28,107 @@ public class WorkerApp {
     public static final String S3PATHFOLDER_SUMMARY = "summary/";
     public static final String WORKERFOLDER_SALES = "data/worker/sales/";
     public static final String WORKERFOLDER_SUMMARY = "data/worker/summary/";
+    public static final String WORKERFOLDER_STATE = "data/worker/state/";
     public static final String WORKER_STORE_SUMMARY = "summaryByStore.csv";
     public static final String WORKER_PRODUCT_SUMMARY = "summaryByProduct.csv";
+    public static final String WORKER_BINARY_SUMMARY = "summary.bin";
+    // Summaries are sent to the consolidator in binary, CSV summaries are only exported with -Dworker.csvSummary=true
+    public static final boolean CSV_SUMMARY = Boolean.getBoolean("worker.csvSummary");
+    // Sales files are streamed from S3 into the parser, a local copy is only kept for audit with -Dworker.keepSales=true
+    public static final boolean KEEP_SALES = Boolean.getBoolean("worker.keepSales");
+    // Sales files are downloaded with parallel ranges and then parsed from disk with -Dworker.mappedParse=true, which
+    // memory-maps and parses by chunks on every core the files larger than SalesParser.MAPPED_PARSE_THRESHOLD
+    public static final boolean MAPPED_PARSE = Boolean.getBoolean("worker.mappedParse");
 
+    // Messages are processed concurrently, at most -Dworker.concurrency at once, which should not exceed the number
+    // of connections of the S3 client
+    public static final int CONCURRENCY = Integer.getInteger("worker.concurrency", 16);
+    // Updated summaries are written, uploaded and notified every -Dworker.publishMillis ms
+    public static final long PUBLISH_MILLIS = Long.getLong("worker.publishMillis", 1000);
 
-    public static void main(String[] args) throws InterruptedException {
+    private static final ExecutorService MESSAGE_EXECUTOR = createMessageExecutor();
+    private static final Semaphore MESSAGE_PERMITS = new Semaphore(CONCURRENCY);
+    private static final Set<String> processedMessages = ConcurrentHashMap.newKeySet();
+    private static final Set<String> updatedDates = ConcurrentHashMap.newKeySet();
+    private static SummaryStore stateStore;
+
+    public static void main(String[] args) throws IOException {
         // Check queue if they exist
         checkQueueExist(INBOX);
         checkQueueExist(OUTBOX);
 
-        // Loop the received message
-        List<Message> messages;
-        System.out.println("[Worker] Listening INBOX queue for messages every 10s");
-        while (true) {
-            messages = SQSReceiveMessage.receiveMessages(INBOX);
-            if (!messages.isEmpty()) {
-                for (Message message : messages) {
-                    // For each message, extract filename and download the file
-                    String bucketName = message.body().split(":")[0];
-                    String filePath = message.body().split(":")[1];
-                    String fileName = message.body().split("/")[1];
-
-                    // Download object on S3 given SQS msg
-                    S3DownloadObject.downloadObject(bucketName, filePath, WORKERFOLDER_SALES + fileName);
-                    // Update summary on the Worker once all available files downloaded
-                    updateSummary(fileName);
-                }
-                // Delete message on the SQS queue once received
-                SQSDeleteMessage.deleteMessages(INBOX, messages);
-
-                // Notifying OUTBOX queue
-                System.out.println("[Worker] Notifying OUTBOX queue");
-                String[] files = new File(WORKERFOLDER_SUMMARY).list();
-                if (files != null) {
-                    for (String file : files) {
-                        S3UploadObject.uploadObject(BUCKETNAME, WORKERFOLDER_SUMMARY + file, S3PATHFOLDER_SUMMARY + file, true);
-                        SQSSendMessage.sendMessages(OUTBOX, BUCKETNAME + ":" + S3PATHFOLDER_SUMMARY + file);
-                    }
-                }
+        // Restore the summaries of the previous runs
+        stateStore = SummaryStore.open(Path.of(WORKERFOLDER_STATE));
+
+        // Publish the updated summaries in the background, while messages are processed
+        ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor();
+        publisher.scheduleWithFixedDelay(WorkerApp::publishSummaries, PUBLISH_MILLIS, PUBLISH_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Loop the received message, waiting on the queue for the next ones as soon as they can be processed
+        System.out.println("[Worker] Listening INBOX queue for messages, processing " + CONCURRENCY + " at once");
+        try {
+            SQSConsumer.poll(INBOX, WorkerApp::dispatchMessages);
+        } finally {
+            // The messages being processed are ended, and no thread is left to keep the JVM alive without polling
+            MESSAGE_EXECUTOR.shutdown();
+            publisher.shutdown();
+        }
+    }
+
+    /**
+     * Hands each message to its own task, waiting while {@link #CONCURRENCY} messages are already being processed.
+     */
+    private static void dispatchMessages(List<Message> messages) {
+        for (Message message : messages) {
+            try {
+                MESSAGE_PERMITS.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
-            System.out.println("\n[Worker] Now listening for messages from INBOX queue every 10s");
-            Thread.sleep(10000);
+            MESSAGE_EXECUTOR.execute(() -> {
+                try {
+                    processMessage(message);
+                } catch (RuntimeException e) {
+                    System.err.println("[Worker] Could not summarize " + message.body() + ", it will be received again: " + e);
+                } finally {
+                    MESSAGE_PERMITS.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Summarizes the sales file of a message into the summary of its date, then deletes the message. A message whose
+     * file no longer exists is deleted without being summarized, while a message whose file cannot be read or
+     * summarized is not deleted, so that it is received again.
+     */
+    private static void processMessage(Message message) {
+        // Skip messages of a file already being processed, received again before the processing ended
+        if (!processedMessages.add(message.body()))
+            return;
+        try {
+            // Skip files already in the summaries, such as messages delivered again after a restart
+            if (!stateStore.isApplied(message.body())) {
+                // Extract filename, and parse dates from file names '01-10-2022-store1.csv' => '01-10-2022'
+                String bucketName = message.body().split(":")[0];
+                String filePath = message.body().split(":")[1];
+                String fileName = message.body().split("/")[1];
+                String date = fileName.substring(0, 10);
+
+                SaleSummary partial = ingestSales(bucketName, filePath, fileName);
+                if (partial != null)
+                    updateSummary(date, message.body(), partial);
+                else
+                    System.err.println("[Worker] " + message.body() + " no longer exists, its message is deleted");
+            } else
+                System.out.println("[Worker] Already summarized: " + message.body());
+
+            // Delete message on the SQS queue once summarized
+            if (!SQSDeleteMessage.deleteMessages(INBOX, List.of(message)).isEmpty())
+                System.err.println("[Worker] " + message.body() + " is summarized but not deleted, it will be skipped when received again");
+        } finally {
+            processedMessages.remove(message.body());
         }
     }
 
@@ -74,16 +138,138 @@ public class WorkerApp {
         System.out.println("[Worker] "+ queue + " queue has been set up.");
     }
 
-    private static void updateSummary(String file) {
-        // Parse dates from file names '01-10-2022-store1.csv' => '01-10-2022'
-        String date = file.substring(0, 10);
-        // Get summary by date
-        SaleSummary summary = SaleSummary.createOrGetSummary(date);
-        // Parse sales
-        SaleSummary.parseSales(summary, WORKERFOLDER_SALES + file);
-        // Update summary by store
-        SaleSummary.updateSummaryByStore(summary, WORKERFOLDER_SUMMARY + date + '-' + WORKER_STORE_SUMMARY);
-        // Update summary by products
-        SaleSummary.updateSummaryByProduct(summary, WORKERFOLDER_SUMMARY + date + '-' + WORKER_PRODUCT_SUMMARY);
+    /**
+     * Streams a sales file from S3, or downloads it in {@link #MAPPED_PARSE} mode, and parses it into its own partial
+     * summary.
+     *
+     * @return the partial summary of the file, or null if it does not exist
+     * @throws RuntimeException If the file cannot be read
+     */
+    private static SaleSummary ingestSales(String bucketName, String filePath, String fileName) {
+        // Parse sales, in streaming mode: sales are folded into totals and not retained
+        SaleSummary partial = SaleSummary.createPartialSummary(false);
+        if (MAPPED_PARSE) {
+            String salesFile = WORKERFOLDER_SALES + fileName;
+            if (!S3DownloadObject.downloadObject(bucketName, filePath, salesFile)) {
+                if (S3CheckObject.isKnownMissing(bucketName, filePath))
+                    return null;
+                throw new RuntimeException("Could not download " + filePath);
+            }
+            try {
+                SaleSummary.parseSales(partial, salesFile);
+            } finally {
+                if (!KEEP_SALES)
+                    deleteSalesFile(salesFile);
+            }
+            return partial;
+        }
+        // Read object on S3 given SQS msg
+        return S3DownloadObject.streamObject(bucketName, filePath, KEEP_SALES ? WORKERFOLDER_SALES + fileName : null, in -> {
+            SaleSummary.parseSales(partial, in, filePath);
+            return partial;
+        });
+    }
+
+    private static void deleteSalesFile(String salesFile) {
+        try {
+            Files.deleteIfExists(Path.of(salesFile));
+        } catch (IOException e) {
+            System.err.println("[Worker] Could not delete " + salesFile + ": " + e);
+        }
+    }
+
+    private static void updateSummary(String date, String file, SaleSummary partial) {
+        // The summary is logged and merged by the state store under its lock, which is the only lock of the summaries
+        // of dates, so that neither a checkpoint nor an eviction of the summaries happens in between
+        try {
+            stateStore.apply(date, file, partial);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        updatedDates.add(date);
+    }
+
+    /**
+     * Writes the summaries of the dates updated since the last call, uploads them and notifies the OUTBOX queue. A date
+     * whose summary cannot be written, uploaded or notified is published again by the next call.
+     */
+    private static void publishSummaries() {
+        Set<String> unpublished = new HashSet<>();
+        try {
+            Map<String, List<String>> files = new TreeMap<>();
+            // No summary is updated while they are written and the least recently used ones are evicted
+            synchronized (stateStore) {
+                if (updatedDates.isEmpty())
+                    return;
+                unpublished.addAll(updatedDates);
+                updatedDates.removeAll(unpublished);
+                for (String date : unpublished) {
+                    SaleSummary summary = SaleSummary.createOrGetSummary(date);
+                    List<String> dateFiles = new ArrayList<>();
+                    // Update binary summary
+                    dateFiles.add(date + '-' + WORKER_BINARY_SUMMARY);
+                    boolean written = SaleSummary.updateSummaryBinary(summary, WORKERFOLDER_SUMMARY + date + '-' + WORKER_BINARY_SUMMARY);
+                    if (CSV_SUMMARY) {
+                        // Update summary by store
+                        dateFiles.add(date + '-' + WORKER_STORE_SUMMARY);
+                        written &= SaleSummary.updateSummaryByStore(summary, WORKERFOLDER_SUMMARY + date + '-' + WORKER_STORE_SUMMARY);
+                        // Update summary by products
+                        dateFiles.add(date + '-' + WORKER_PRODUCT_SUMMARY);
+                        written &= SaleSummary.updateSummaryByProduct(summary, WORKERFOLDER_SUMMARY + date + '-' + WORKER_PRODUCT_SUMMARY);
+                    }
+                    if (written)
+                        files.put(date, dateFiles);
+                }
+                SaleSummary.getSummaries().trim();
+            }
+            System.out.println("[Worker] Summary cache: " + SaleSummary.getSummaries());
+
+            // Notifying OUTBOX queue, by batches of messages sent while the next summaries are uploaded
+            System.out.println("[Worker] Notifying OUTBOX queue");
+            Map<String, String> messageDates = new HashMap<>();
+            Set<String> uploadedDates = new HashSet<>();
+            try (SQSBatchSender outbox = new SQSBatchSender(OUTBOX)) {
+                for (Map.Entry<String, List<String>> dateFiles : files.entrySet()) {
+                    boolean uploaded = true;
+                    for (String file : dateFiles.getValue()) {
+                        // Only a summary found in the bucket is notified
+                        if (!S3UploadObject.uploadObject(BUCKETNAME, WORKERFOLDER_SUMMARY + file, S3PATHFOLDER_SUMMARY + file, true)) {
+                            uploaded = false;
+                            continue;
+                        }
+                        String body = BUCKETNAME + ":" + S3PATHFOLDER_SUMMARY + file;
+                        messageDates.put(body, dateFiles.getKey());
+                        outbox.send(body);
+                    }
+                    if (uploaded)
+                        uploadedDates.add(dateFiles.getKey());
+                }
+                outbox.flush();
+                for (String body : outbox.getFailedMessages())
+                    uploadedDates.remove(messageDates.get(body));
+            }
+            unpublished.removeAll(uploadedDates);
+        } catch (RuntimeException e) {
+            // Keep publishing the next updates
+            System.err.println("[Worker] Could not publish the summaries: " + e);
+        } finally {
+            if (!unpublished.isEmpty()) {
+                System.err.println("[Worker] Summaries of " + unpublished + " not published, they will be published again");
+                updatedDates.addAll(unpublished);
+            }
+        }
+    }
+
+    /**
+     * @return an executor starting a virtual thread per message when the JVM has them, from Java 21, else an executor
+     * of {@link #CONCURRENCY} threads
+     */
+    private static ExecutorService createMessageExecutor() {
+        try {
+            // Looked up by reflection, as the sources target Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(CONCURRENCY);
+        }
     }
 }
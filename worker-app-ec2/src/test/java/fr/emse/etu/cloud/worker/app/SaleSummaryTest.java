@@ -0,0 +1,192 @@
+package fr.emse.etu.cloud.worker.app;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.ref.Reference;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the totals computed in a single pass over the sales against totals computed from every record of the data
+ * files with commons-csv and exact decimals, and the totals of files parsed by memory-mapped chunks.
+ */
+class SaleSummaryTest {
+    static final Path DATA_FOLDER = Path.of("../data");
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.builder()
+            .setDelimiter(';')
+            .setHeader()
+            .setSkipHeaderRecord(true)
+            .build();
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void totalsOfEveryDataFileMatchTheRecords() throws IOException {
+        List<Path> files = dataFiles();
+        SaleSummary summary = SaleSummary.createPartialSummary(false);
+        Map<String, BigDecimal> storeProfits = new TreeMap<>();
+        Map<String, String> products = new TreeMap<>();
+        Map<String, BigDecimal> productProfits = new HashMap<>();
+        Map<String, Integer> productQuantities = new HashMap<>();
+        Map<String, Integer> productSold = new HashMap<>();
+
+        for (Path file : files) {
+            try (InputStream in = Files.newInputStream(file)) {
+                SaleSummary.parseSales(summary, in, file.toString());
+            }
+            try (Reader reader = Files.newBufferedReader(file)) {
+                for (CSVRecord record : CSV_FORMAT.parse(reader)) {
+                    String product = record.get("Product");
+                    int quantity = Integer.parseInt(record.get("Quantity"));
+                    storeProfits.merge(record.get("Store"), new BigDecimal(record.get("Unit_Price")), BigDecimal::add);
+                    productProfits.merge(product, new BigDecimal(record.get("Unit_Profit"))
+                            .multiply(BigDecimal.valueOf(quantity)), BigDecimal::add);
+                    productQuantities.merge(product, quantity, Integer::sum);
+                    productSold.merge(product, 1, Integer::sum);
+                }
+            }
+        }
+        for (String product : productProfits.keySet())
+            products.put(product, productProfits.get(product).setScale(2) + "$;" + productQuantities.get(product)
+                    + " units;\"" + productSold.get(product) + "$\";");
+
+        Path byStore = folder.resolve("stores.csv");
+        SaleSummary.updateSummaryByStore(summary, byStore.toString());
+        Map<String, String> writtenStores = readSummary(byStore, "Store;Total_Profit;");
+        assertEquals(storeProfits.size(), writtenStores.size());
+        storeProfits.forEach((store, profit) -> assertEquals(profit.setScale(2) + "$;", writtenStores.get(store), store));
+
+        Path byProduct = folder.resolve("products.csv");
+        SaleSummary.updateSummaryByProduct(summary, byProduct.toString());
+        assertEquals(products, readSummary(byProduct, "Product;Total_Profit;Total_Quantity;Total_Sold"));
+    }
+
+    @Test
+    void mergedPartialSummariesMatchASingleSummary() throws IOException {
+        SaleSummary single = SaleSummary.createPartialSummary(false);
+        SaleSummary merged = SaleSummary.createPartialSummary(false);
+        for (Path file : dataFiles()) {
+            SaleSummary partial = SaleSummary.createPartialSummary(false);
+            try (InputStream in = Files.newInputStream(file)) {
+                SaleSummary.parseSales(partial, in, file.toString());
+            }
+            try (InputStream in = Files.newInputStream(file)) {
+                SaleSummary.parseSales(single, in, file.toString());
+            }
+            merged.merge(partial);
+        }
+
+        assertArrayEquals(binary(single), binary(merged));
+    }
+
+    @Test
+    void mappedChunksMatchTheStreamingParser() throws IOException {
+        Path file = dataFiles().get(0);
+        SaleSummary streamed = SaleSummary.createPartialSummary(false);
+        parseAll(streamed, List.of(file));
+        // A short file without a final line break, split into chunks of a few bytes so that every nominal boundary falls
+        // inside a line, and into more chunks than it has lines
+        List<String> lines = Files.readAllLines(file);
+        Path shortFile = folder.resolve("short.csv");
+        Files.writeString(shortFile, String.join("\n", lines.subList(0, 6)));
+        SaleSummary shortStreamed = SaleSummary.createPartialSummary(false);
+        parseAll(shortStreamed, List.of(shortFile));
+
+        for (int chunks : new int[]{1, 3, 7, 16, 64}) {
+            SaleSummary mapped = SaleSummary.createPartialSummary(false);
+            assertEquals(lines.size() - 1, SalesParser.parseMapped(mapped, file, chunks), chunks + " chunks");
+            assertArrayEquals(binary(streamed), binary(mapped), chunks + " chunks");
+
+            SaleSummary shortMapped = SaleSummary.createPartialSummary(false);
+            assertEquals(5, SalesParser.parseMapped(shortMapped, shortFile, chunks), chunks + " chunks");
+            assertArrayEquals(binary(shortStreamed), binary(shortMapped), chunks + " chunks");
+        }
+    }
+
+    @Test
+    void heapRetainedByAStreamingSummaryDoesNotGrowWithTheSales() throws IOException {
+        List<Path> files = dataFiles();
+        long retained = retainedGrowth(SaleSummary.createPartialSummary(false), files);
+        long retainedBySales = retainedGrowth(SaleSummary.createPartialSummary(true), files);
+
+        // Parsing all the files adds no store nor product, so the totals keep the same size
+        assertTrue(retained < 1 << 20, "Streaming summary retained " + retained + " more bytes");
+        // Checks that the measure sees the sales when they are retained
+        assertTrue(retainedBySales > 8 << 20, "Retaining summary retained only " + retainedBySales + " more bytes");
+    }
+
+    /**
+     * @return the heap retained after parsing all the files into the summary, minus the heap retained after parsing
+     * the first one
+     */
+    private static long retainedGrowth(SaleSummary summary, List<Path> files) throws IOException {
+        parseAll(summary, files.subList(0, 1));
+        long afterOneFile = usedHeap();
+        parseAll(summary, files.subList(1, files.size()));
+        long afterAllFiles = usedHeap();
+        Reference.reachabilityFence(summary);
+        return afterAllFiles - afterOneFile;
+    }
+
+    private static void parseAll(SaleSummary summary, List<Path> files) throws IOException {
+        for (Path file : files) {
+            try (InputStream in = Files.newInputStream(file)) {
+                SaleSummary.parseSales(summary, in, file.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the bytes of heap in use after collecting the garbage, which become stable after a few collections
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int collection = 0; collection < 5; collection++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    static List<Path> dataFiles() throws IOException {
+        try (Stream<Path> files = Files.list(DATA_FOLDER)) {
+            List<Path> csvFiles = files.filter(file -> file.toString().endsWith(".csv")).sorted().toList();
+            assertFalse(csvFiles.isEmpty(), "No data file in " + DATA_FOLDER.toAbsolutePath());
+            return csvFiles;
+        }
+    }
+
+    static byte[] binary(SaleSummary summary) {
+        ByteBuffer buffer = ByteBuffer.allocate(summary.binarySize());
+        summary.writeBinary(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * @return the values of a summary written as CSV, by key
+     */
+    private static Map<String, String> readSummary(Path file, String header) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(header, lines.get(0));
+        Map<String, String> values = new TreeMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            int separator = line.indexOf(';');
+            assertNull(values.put(line.substring(0, separator), line.substring(separator + 1)), line);
+        }
+        return values;
+    }
+}
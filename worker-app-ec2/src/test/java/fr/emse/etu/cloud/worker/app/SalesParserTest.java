@@ -0,0 +1,52 @@
+package fr.emse.etu.cloud.worker.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesParserTest {
+    private static final String[] SALES = {
+            "01/10/2022 08:00;Store 1;Coffee;3;4.50;2.00;2.50;13.50",
+            "01/10/2022 08:05;Store 2;\"Tea; green\";2;3.20;1.20;2.00;6.40",
+            "01/10/2022 08:10;Store 1;Coffee;1;4.50;2.00;2.50;4.50",
+    };
+
+    @Test
+    void filesWithAnotherHeaderAreParsedByColumnName() throws IOException {
+        // Same sales in the expected layout, parsed by the byte parser
+        StringBuilder expected = new StringBuilder(String.join(";", SalesParser.HEADER)).append('\n');
+        for (String sale : SALES)
+            expected.append(sale).append('\n');
+        SaleSummary reference = SaleSummary.createPartialSummary(false);
+        SalesParser byteParser = new SalesParser(reference);
+        assertEquals(SALES.length, byteParser.parse(stream(expected.toString())));
+        assertFalse(byteParser.usedCsvFallback());
+
+        // Columns reordered, with an additional one, and a quoted field holding the delimiter
+        StringBuilder reordered = new StringBuilder("Extra;Product;Unit_Profit;Quantity;Store;Unit_Price;Date_Time;Unit_Cost;Total_Price\n");
+        for (String sale : SALES) {
+            String[] fields = sale.split(";(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)");
+            reordered.append(String.join(";", "x", fields[2], fields[6], fields[3], fields[1], fields[4], fields[0],
+                    fields[5], fields[7])).append('\n');
+        }
+        SaleSummary summary = SaleSummary.createPartialSummary(false);
+        SalesParser parser = new SalesParser(summary);
+        assertEquals(SALES.length, parser.parse(stream(reordered.toString())));
+        assertTrue(parser.usedCsvFallback());
+
+        assertArrayEquals(SaleSummaryTest.binary(reference), SaleSummaryTest.binary(summary));
+        SaleSummary sales = SaleSummary.createPartialSummary(false);
+        sales.addSale("Store 1", "Coffee", 3, 450, 250);
+        sales.addSale("Store 2", "Tea; green", 2, 320, 200);
+        sales.addSale("Store 1", "Coffee", 1, 450, 250);
+        assertArrayEquals(SaleSummaryTest.binary(sales), SaleSummaryTest.binary(summary));
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,40 @@
+package fr.emse.etu.cloud.worker.app;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SummaryCacheTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void trimEvictsTheLeastRecentlyUsedSummariesDownToTheByteBound() throws IOException {
+        List<Path> files = SaleSummaryTest.dataFiles();
+        SaleSummary partial = SaleSummary.createPartialSummary(false);
+        try (InputStream in = Files.newInputStream(files.get(0))) {
+            SaleSummary.parseSales(partial, in, files.get(0).toString());
+        }
+        byte[] binary = SaleSummaryTest.binary(partial);
+
+        // Room for 2 summaries out of 5
+        SummaryCache cache = new SummaryCache(folder, 100, 2L * binary.length + binary.length / 2);
+        for (int date = 0; date < 5; date++)
+            cache.get("date" + date).merge(partial);
+        cache.trim();
+
+        assertEquals(3, cache.getEvictions());
+        for (int date = 0; date < 5; date++)
+            assertArrayEquals(binary, cache.binary("date" + date), "date" + date);
+        // An evicted summary is reloaded with the same totals
+        assertArrayEquals(binary, SaleSummaryTest.binary(cache.get("date0")));
+        assertEquals(1, cache.getReloads());
+    }
+}
@@ -0,0 +1,167 @@
+package fr.emse.etu.cloud.worker.app;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Restarts a store on the files it left, with new summaries, as a restarted worker does, and checks the summaries and
+ * the applied files it recovers.
+ */
+class SummaryStoreTest {
+    private static final List<SaleSummary> partials = new ArrayList<>();
+
+    @TempDir
+    Path folder;
+    private final Map<String, SaleSummary> expected = new TreeMap<>();
+    private final Set<String> appliedFiles = new HashSet<>();
+    private int recoveries;
+
+    @BeforeAll
+    static void parsePartials() throws IOException {
+        for (Path file : SaleSummaryTest.dataFiles().subList(0, 3)) {
+            SaleSummary partial = SaleSummary.createPartialSummary(false);
+            try (InputStream in = Files.newInputStream(file)) {
+                SaleSummary.parseSales(partial, in, file.toString());
+            }
+            partials.add(partial);
+        }
+    }
+
+    @Test
+    void logIsReplayedOverTheSnapshot() throws IOException {
+        try (SummaryStore store = SummaryStore.open(folder, cache("run1"))) {
+            for (int file = 0; file < 3; file++)
+                apply(store, "date" + file % 2, file);
+            store.checkpoint();
+            for (int file = 3; file < 5; file++)
+                apply(store, "date" + file % 3, file);
+        }
+
+        // The snapshot holds the first 3 files and the log the last 2, one of them of a date not in the snapshot
+        assertRecovered();
+    }
+
+    @Test
+    void appliedFilesSurviveRestarts() throws IOException {
+        try (SummaryStore store = SummaryStore.open(folder, cache("run1"))) {
+            for (int file = 0; file < 2; file++)
+                apply(store, "date0", file);
+        }
+        // Only in the log
+        assertRecovered();
+
+        try (SummaryStore store = SummaryStore.open(folder, cache("run2"))) {
+            apply(store, "date1", 2);
+            store.checkpoint();
+        }
+        // Only in the snapshot
+        assertRecovered();
+
+        try (SummaryStore store = SummaryStore.open(folder, cache("run3"))) {
+            apply(store, "date1", 3);
+        }
+        assertRecovered();
+    }
+
+    @Test
+    void filesAppliedAcrossACheckpointAreRecovered() throws IOException {
+        try (SummaryStore store = SummaryStore.open(folder, cache("run1"))) {
+            // The last file before the checkpoint is in the snapshot, and the next ones in the log
+            for (int file = 0; file < SummaryStore.SNAPSHOT_INTERVAL + 5; file++)
+                apply(store, "date" + file % 2, file);
+        }
+        assertTrue(Files.exists(folder.resolve("snapshot.bin")));
+        assertRecovered();
+    }
+
+    @Test
+    void tornRecordAtTheEndOfTheLogIsDropped() throws IOException {
+        try (SummaryStore store = SummaryStore.open(folder, cache("run1"))) {
+            apply(store, "date0", 0);
+        }
+        long validSize = Files.size(log());
+        try (SummaryStore store = SummaryStore.open(folder, cache("unused"))) {
+            store.apply("date0", "file1", partials.get(1));
+        }
+        // The last record is cut by a crash in the middle of its write
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(log()) - 10);
+        }
+
+        assertRecovered();
+        assertEquals(validSize, Files.size(log()));
+
+        // The next records are appended after the valid ones
+        try (SummaryStore store = SummaryStore.open(folder, cache("run2"))) {
+            apply(store, "date0", 2);
+        }
+        assertRecovered();
+    }
+
+    @Test
+    void recordWithABadChecksumIsDropped() throws IOException {
+        try (SummaryStore store = SummaryStore.open(folder, cache("run1"))) {
+            apply(store, "date0", 0);
+        }
+        long validSize = Files.size(log());
+        try (SummaryStore store = SummaryStore.open(folder, cache("unused"))) {
+            store.apply("date0", "file1", partials.get(1));
+        }
+        // A byte of the last record is changed after its checksum was written
+        try (FileChannel channel = FileChannel.open(log(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(1);
+            long position = Files.size(log()) - 1;
+            channel.read(bytes, position);
+            bytes.put(0, (byte) ~bytes.get(0)).rewind();
+            channel.write(bytes, position);
+        }
+
+        assertRecovered();
+        assertEquals(validSize, Files.size(log()));
+    }
+
+    /**
+     * Applies the partial summary of a file to the store, and to the expected summaries.
+     */
+    private void apply(SummaryStore store, String date, int file) throws IOException {
+        SaleSummary partial = partials.get(file % partials.size());
+        store.apply(date, "file" + file, partial);
+        expected.computeIfAbsent(date, key -> SaleSummary.createPartialSummary(false)).merge(partial);
+        appliedFiles.add("file" + file);
+    }
+
+    /**
+     * Opens the store with empty summaries, and checks that it recovers the expected summaries and applied files.
+     */
+    private void assertRecovered() throws IOException {
+        SummaryCache summaries = cache("recovered" + ++recoveries);
+        try (SummaryStore store = SummaryStore.open(folder, summaries)) {
+            assertEquals(expected.keySet(), summaries.dates());
+            for (Map.Entry<String, SaleSummary> date : expected.entrySet())
+                assertArrayEquals(SaleSummaryTest.binary(date.getValue()), SaleSummaryTest.binary(summaries.get(date.getKey())),
+                        date.getKey());
+            for (int file = 0; file < SummaryStore.SNAPSHOT_INTERVAL + 10; file++)
+                assertEquals(appliedFiles.contains("file" + file), store.isApplied("file" + file), "file" + file);
+        }
+    }
+
+    private SummaryCache cache(String run) {
+        return new SummaryCache(folder.resolve("spill-" + run), 64, Long.MAX_VALUE);
+    }
+
+    private Path log() {
+        return folder.resolve("applied.log");
+    }
+}
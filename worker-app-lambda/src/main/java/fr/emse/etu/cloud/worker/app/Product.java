@@ -1,23 +1,50 @@
 package fr.emse.etu.cloud.worker.app;
 
-import java.util.HashSet;
-import java.util.Set;
+import fr.emse.etu.cloud.common.Money;
 
-public record Product(String productName, double totalProfit, int totalQuantity, double totalSold) {
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-    public static Set<Product> parseProducts(String csvContent) {
-        Set<Product> productSummaries = new HashSet<>();
-        String[] lines = csvContent.split("\n");
-        for (String line : lines) {
-            if (line.startsWith("Product")) continue; // Skip header
-            String[] parts = line.split(";");
-            String productName = parts[0];
-            double totalProfit = Double.parseDouble(parts[1].replace("$", ""));
-            int totalQuantity = Integer.parseInt(parts[2].split(" ")[0]);
-            double totalSold = Double.parseDouble(parts[3].replace("\"", "").replace("$", ""));
-            productSummaries.add(new Product(productName, totalProfit, totalQuantity, totalSold));
+/**
+ * Totals of a product in a product summary file, with its profit in cents.
+ */
+public record Product(String productName, long totalProfit, int totalQuantity, double totalSold) {
+
+    /**
+     * Parses the content of a product summary file in a single pass, without splitting it into lines and fields.
+     *
+     * @param csvContent Content of a product summary file
+     * @return the totals indexed by product, in the order of the content
+     */
+    public static Map<String, Product> parseProducts(String csvContent) {
+        Map<String, Product> productSummaries = new LinkedHashMap<>();
+        int start = 0;
+        while (start < csvContent.length()) {
+            int end = csvContent.indexOf('\n', start);
+            if (end < 0)
+                end = csvContent.length();
+            // Skip header and empty lines
+            if (end > start && !csvContent.startsWith("Product;", start)) {
+                // Line "<product>;<profit>$;<quantity> units;"<sold>$";"
+                int profitStart = csvContent.indexOf(';', start) + 1;
+                int quantityStart = csvContent.indexOf(';', profitStart) + 1;
+                int soldStart = csvContent.indexOf(';', quantityStart) + 1;
+                int soldEnd = csvContent.indexOf(';', soldStart);
+                String productName = csvContent.substring(start, profitStart - 1);
+                long totalProfit = Money.parseCents(csvContent, profitStart, quantityStart - 2);
+                int totalQuantity = Integer.parseInt(csvContent, quantityStart, csvContent.indexOf(' ', quantityStart), 10);
+                double totalSold = Double.parseDouble(csvContent.substring(soldStart + 1, (soldEnd < 0 ? end : soldEnd) - 2));
+                productSummaries.put(productName, new Product(productName, totalProfit, totalQuantity, totalSold));
+            }
+            start = end + 1;
         }
         return productSummaries;
     }
 
+    /**
+     * @return the totals of this product with the totals of new sales added
+     */
+    public Product add(long profit, int quantity, int sold) {
+        return new Product(productName, totalProfit + profit, totalQuantity + quantity, totalSold + sold);
+    }
 }
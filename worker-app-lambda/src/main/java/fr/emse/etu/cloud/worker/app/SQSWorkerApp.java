@@ -0,0 +1,54 @@
+package fr.emse.etu.cloud.worker.app;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The application triggered by batches of SQS messages of the `INBOX` queue, each naming a sales file as
+ * 'bucket:key'. The batch size and batching window are set on the SQS trigger of the function, so that a single
+ * invocation summarizes many sales files.
+ * <p>
+ * The files of a batch are downloaded and parsed in parallel, merged by date, and the summaries of each date are
+ * updated once. Messages whose file could not be parsed, or whose date summaries could not be uploaded, are reported
+ * as batch item failures, which requires `ReportBatchItemFailures` on the trigger, so that only these messages are
+ * delivered again and the files already in the uploaded summaries are not counted twice.
+ * <p>
+ * The summaries on S3 are read, updated and uploaded back without any lock, so concurrent invocations must not update
+ * the same dates: set a reserved concurrency of 1 on the function.
+ */
+public class SQSWorkerApp implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    static {
+        // Build the clients and load the classes during the init phase of the function
+        WorkerApp.prime();
+    }
+
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        long start = System.nanoTime();
+        // The same file may be named by several messages of a batch
+        Map<String, List<String>> messageIds = new LinkedHashMap<>();
+        for (SQSEvent.SQSMessage message : event.getRecords())
+            messageIds.computeIfAbsent(message.getBody(), object -> new ArrayList<>()).add(message.getMessageId());
+
+        Map<String, ForkJoinTask<SaleSummary>> summaries = WorkerApp.ingestSales(messageIds.keySet());
+        // Failures are reported instead of thrown, as the whole batch would be delivered again
+        Set<String> failedObjects = WorkerApp.updateSummaries(summaries);
+
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        for (Map.Entry<String, ForkJoinTask<SaleSummary>> summary : summaries.entrySet()) {
+            if (summary.getValue().isCompletedAbnormally())
+                System.err.println("[Worker] Could not summarize " + summary.getKey() + ": " + summary.getValue().getException());
+            else if (!failedObjects.contains(summary.getKey()))
+                continue;
+            for (String messageId : messageIds.get(summary.getKey()))
+                failures.add(new SQSBatchResponse.BatchItemFailure(messageId));
+        }
+        WorkerApp.logInvocation(start);
+        return new SQSBatchResponse(failures);
+    }
+}
@@ -1,26 +1,44 @@
 package fr.emse.etu.cloud.worker.app;
 
+import fr.emse.etu.cloud.common.AwsClients;
+import fr.emse.etu.cloud.common.Money;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 import java.io.*;
-import java.text.DecimalFormat;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * This class computes statistics to summarize sales.
  */
 public class SaleSummary {
-    private final List<Sale> allSales = new ArrayList<>();
-    private final Set<String> stores = new HashSet<>();     // A set allows to only keep unique values
-    private final Set<String> products = new HashSet<>();   // which is useful for filtering by set
-    private final DecimalFormat currencyFormat = new DecimalFormat("0.00");
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.builder()
+            .setDelimiter(';')
+            .setHeader("Date_Time", "Store", "Product", "Quantity", "Unit_Price", "Unit_Cost", "Unit_Profit", "Total_Price")
+            .setSkipHeaderRecord(true)
+            .build();
+    private static final ThreadLocal<SummaryWriter> WRITERS = ThreadLocal.withInitial(SummaryWriter::new);
+    private final Map<String, StoreTotals> stores = new HashMap<>();      // Totals are accumulated once per sale
+    private final Map<String, ProductTotals> products = new HashMap<>();  // so writing a summary is O(keys)
 
-    public record Sale(String store, String product, int quantity, float price, float profit) {
+    /**
+     * Running totals of a store, updated each time one of its sales is added.
+     */
+    private static final class StoreTotals {
+        private long profit;    // In cents
+    }
+
+    /**
+     * Running totals of a product, updated each time one of its sales is added.
+     */
+    private static final class ProductTotals {
+        private long profit;    // In cents
+        private int quantity;
+        private int sold;
     }
 
     /**
@@ -29,147 +47,120 @@ public class SaleSummary {
      * @return a fr.emse.etu.cloud.app.SaleSummary
      */
     public static SaleSummary parseSales(String bucketName, String s3ObjectKey) {
-        SaleSummary summary = new SaleSummary();
-
-        S3Client s3Client = S3Client.builder().build();
         GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(s3ObjectKey)
                 .build();
 
-        try (ResponseInputStream<GetObjectResponse> s3Input = s3Client.getObject(getObjectRequest);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(s3Input))) {
-
-            Iterable<CSVRecord> records = CSVFormat.DEFAULT.builder()
-                    .setDelimiter(';')
-                    .setHeader("Date_Time", "Store", "Product", "Quantity", "Unit_Price", "Unit_Cost", "Unit_Profit", "Total_Price")
-                    .setSkipHeaderRecord(true)
-                    .build()
-                    .parse(reader);
-
-            for (CSVRecord record : records) {
-                String store = record.get("Store");
-                String product = record.get("Product");
-                int quantity = Integer.parseInt(record.get("Quantity"));
-                float unitPrice = Float.parseFloat(record.get("Unit_Price"));
-                float unitProfit = Float.parseFloat(record.get("Unit_Profit"));
-
-                // Add record as sale to summary
-                summary.addSale(new Sale(store, product, quantity, unitPrice, unitProfit));
-            }
+        try (ResponseInputStream<GetObjectResponse> s3Input = AwsClients.s3().getObject(getObjectRequest)) {
+            return parseSales(s3Input);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return summary;
     }
 
     /**
-     * Update the store summary, it creates the file if nonexistent, and append the store profit otherwise
-     * @param summary
-     * @param outputFile
+     * Parses a CSV stream to create a summary
+     *
+     * @param in Stream of the CSV file
+     * @return a fr.emse.etu.cloud.app.SaleSummary
      */
-    public static void updateSummaryByStore(SaleSummary summary, String outputFile) {
-        try {
-            // Create the file object from the output file path
-            File file = new File(outputFile);
-
-            // Ensure parent directories exist
-            if (!file.getParentFile().exists()) {
-                file.getParentFile().mkdirs();
-            }
-
-            // Using try-with-resources for FileWriter
-            try (FileWriter fileWriter = new FileWriter(file, file.exists())) {
-                // Write the header only at the first line
-                if(!file.exists())
-                    fileWriter.write("Store;Total_Profit;\n");
-
-                // Write the stores
-                for (String store : summary.stores)
-                    fileWriter.write(store + ';' + summary.totalProfitByStore(store) + "$;\n");
-
-                System.out.println("[Worker] Data per store successfully updated into " + file.toPath().toUri());
-            }
-        } catch (IOException e) {
-            System.err.println("[Worker] An error occurred while writing to the file.");
-            e.printStackTrace();
+    public static SaleSummary parseSales(InputStream in) throws IOException {
+        SaleSummary summary = new SaleSummary();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        for (CSVRecord record : CSV_FORMAT.parse(reader)) {
+            String store = record.get("Store");
+            String product = record.get("Product");
+            int quantity = Integer.parseInt(record.get("Quantity"));
+            long unitPrice = Money.parseCents(record.get("Unit_Price"));
+            long unitProfit = Money.parseCents(record.get("Unit_Profit"));
+
+            // Add record as sale to summary
+            summary.addSale(store, product, quantity, unitPrice, unitProfit);
         }
+        return summary;
     }
 
     /**
-     * Unlike store summary, this will rewrite the whole file with the recalculated products totals
+     * Update the store summary, it creates the content if nonexistent, and append the store profit otherwise
      * @param summary
-     * @param outputFile
+     * @param previousContent Current content of the store summary, null if nonexistent
+     * @return the UTF-8 bytes of the updated store summary, which are reused by the next summary built by the thread
      */
-    public static void updateSummaryByProduct(SaleSummary summary, String outputFile, Set<Product> products) {
+    public static ByteBuffer updateSummaryByStore(SaleSummary summary, String previousContent) {
+        SummaryWriter writer = WRITERS.get();
+        StringBuilder text = writer.start();
+
+        // Keep the stores already in the summary, and write the header only at the first line otherwise
+        if (previousContent != null)
+            text.append(previousContent);
+        else
+            text.append("Store;Total_Profit;\n");
+
+        // Write the stores
+        for (Map.Entry<String, StoreTotals> entry : summary.stores.entrySet()) {
+            text.append(entry.getKey()).append(';');
+            Money.appendCents(text, entry.getValue().profit).append("$;\n");
+        }
 
-        // Create the file object from the output file path
-        File file = new File(outputFile);
+        return writer.finish();
+    }
 
-        // Ensure parent directories exist
-        if (!file.getParentFile().exists()) {
-            file.getParentFile().mkdirs();
+    /**
+     * Unlike store summary, this will rewrite the whole content with the recalculated products totals. The previous
+     * totals are loaded once into an index by product, the totals of the summary are added to it in a single pass,
+     * and every product of the index is written back.
+     * @param summary
+     * @param previousContent Current content of the product summary, null if nonexistent
+     * @return the UTF-8 bytes of the updated product summary, which are reused by the next summary built by the thread
+     */
+    public static ByteBuffer updateSummaryByProduct(SaleSummary summary, String previousContent) {
+        SummaryWriter writer = WRITERS.get();
+
+        // Add the totals of the summary to the previous totals
+        Map<String, Product> products = previousContent != null ? Product.parseProducts(previousContent) : new LinkedHashMap<>();
+        for (Map.Entry<String, ProductTotals> entry : summary.products.entrySet()) {
+            ProductTotals totals = entry.getValue();
+            products.merge(entry.getKey(), new Product(entry.getKey(), totals.profit, totals.quantity, totals.sold),
+                    (previous, added) -> previous.add(totals.profit, totals.quantity, totals.sold));
         }
 
-        try (FileWriter fileWriter = new FileWriter(outputFile)) {
-
-            // Write the header only at the first line
-            fileWriter.write("Product;Total_Profit;Total_Quantity;Total_Sold\n");
-            // Write the summary per product
-            for (String product : summary.products) {
-                Product productStat = products.stream()
-                        .filter(p -> p.productName().equals(product))
-                        .findFirst()
-                        .orElse(new Product(product, 0, 0, 0));
-
-                try {
-                    fileWriter.write("%s;%s$;%s units;\"%s$\";\n".formatted(product,
-                            summary.totalProfitByProduct(product) + productStat.totalProfit(),
-                            summary.totalQuantityByProduct(product) + productStat.totalQuantity(),
-                            summary.totalSoldByProduct(product) + productStat.totalSold())
-                    );
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-
-            System.out.println("[Worker] Data per product successfully updated into " + file.toPath().toUri());
-        } catch (IOException e) {
-            System.err.println("[Worker] An error occurred while writing to the file.");
-            e.printStackTrace();
+        // Write the header only at the first line
+        StringBuilder text = writer.start().append("Product;Total_Profit;Total_Quantity;Total_Sold\n");
+        // Write the summary per product
+        for (Product product : products.values()) {
+            text.append(product.productName()).append(';');
+            Money.appendCents(text, product.totalProfit()).append("$;")
+                    .append(product.totalQuantity()).append(" units;")
+                    .append('"').append(product.totalSold()).append("$\";\n");
         }
-    }
 
-    private void addSale(Sale sale) {
-        allSales.add(sale);
-        products.add(sale.product());
-        stores.add(sale.store());
+        return writer.finish();
     }
 
-    private String totalProfitByStore(String store) {
-        return currencyFormat.format(allSales.stream()
-                .filter(t -> t.store().equals(store))
-                .mapToDouble(Sale::price)
-                .sum());
-    }
-
-    private int totalQuantityByProduct(String product) {
-        return allSales.stream()
-                .filter(t -> t.product().equals(product))
-                .mapToInt(Sale::quantity)
-                .sum();
+    /**
+     * Adds the totals of another summary to this one.
+     *
+     * @param other Summary to add, which is left unchanged
+     */
+    public void merge(SaleSummary other) {
+        for (Map.Entry<String, StoreTotals> entry : other.stores.entrySet())
+            stores.computeIfAbsent(entry.getKey(), store -> new StoreTotals()).profit += entry.getValue().profit;
+        for (Map.Entry<String, ProductTotals> entry : other.products.entrySet()) {
+            ProductTotals totals = products.computeIfAbsent(entry.getKey(), product -> new ProductTotals());
+            totals.profit += entry.getValue().profit;
+            totals.quantity += entry.getValue().quantity;
+            totals.sold += entry.getValue().sold;
+        }
     }
 
-    private String totalProfitByProduct(String product) {
-        return currencyFormat.format(allSales.stream()
-                .filter(t -> t.product().equals(product))
-                .mapToDouble(t -> t.quantity() * t.profit())
-                .sum());
-    }
+    private void addSale(String store, String product, int quantity, long price, long profit) {
+        StoreTotals storeTotals = stores.computeIfAbsent(store, key -> new StoreTotals());
+        storeTotals.profit += price;
 
-    private int totalSoldByProduct(String product) {
-        return (int) allSales.stream()
-                .filter(t -> t.product().equals(product))
-                .count();
+        ProductTotals productTotals = products.computeIfAbsent(product, key -> new ProductTotals());
+        productTotals.profit += quantity * profit;
+        productTotals.quantity += quantity;
+        productTotals.sold++;
     }
 }
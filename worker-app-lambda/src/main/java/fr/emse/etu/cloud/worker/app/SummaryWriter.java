@@ -0,0 +1,42 @@
+package fr.emse.etu.cloud.worker.app;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stage of the summaries.
+ * <p>
+ * A summary is built as text in a reused buffer and encoded into a reused byte buffer, which is uploaded as is, so
+ * that summaries never go through the disk of the function. A writer is not thread-safe.
+ */
+public class SummaryWriter {
+    private final StringBuilder text = new StringBuilder(4096);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer bytes = ByteBuffer.allocate(4096);
+
+    /**
+     * @return the emptied text buffer, to build the next summary in
+     */
+    public StringBuilder start() {
+        text.setLength(0);
+        return text;
+    }
+
+    /**
+     * Encodes the text buffer in UTF-8.
+     *
+     * @return the byte buffer holding the summary, valid until the next summary is finished
+     */
+    public ByteBuffer finish() {
+        // A UTF-16 char never takes more than 3 bytes in UTF-8
+        if (bytes.capacity() < text.length() * 3)
+            bytes = ByteBuffer.allocate(text.length() * 3);
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), bytes, true);
+        encoder.flush(bytes);
+        return bytes.flip();
+    }
+}
@@ -4,11 +4,18 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
 import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
-import fr.emse.etu.cloud.worker.s3.S3DownloadObject;
-import fr.emse.etu.cloud.worker.s3.S3UploadObject;
+import fr.emse.etu.cloud.common.AwsResolver;
+import fr.emse.etu.cloud.common.s3.S3DownloadObject;
+import fr.emse.etu.cloud.common.s3.S3UploadObject;
+import software.amazon.awssdk.core.exception.SdkException;
 
-import java.io.File;
-import java.util.Set;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The application When receiving an SQS Message in `INBOX` queue, downloads sales files from S3, summarizes sales, and
@@ -24,55 +31,147 @@ public class WorkerApp implements RequestHandler<S3Event, Void> {
     public static final String INBOX = "INBOX";
     public static final String OUTBOX = "OUTBOX";
     public static final String S3PATHFOLDER_SUMMARY = "summary/";
-    public static final String WORKERFOLDER_SALES = "tmp/worker/sales/";
-    public static final String WORKERFOLDER_SUMMARY = "tmp/worker/summary/";
     public static final String WORKER_STORE_SUMMARY = "summaryByStore.csv";
     public static final String WORKER_PRODUCT_SUMMARY = "summaryByProduct.csv";
 
-    public Void handleRequest(S3Event event, Context context) {
-        try {
-            S3EventNotification.S3EventNotificationRecord notificationRecord = event.getRecords().get(0);
-            String bucketName = notificationRecord.getS3().getBucket().getName();
-            String s3ObjectKey = notificationRecord.getS3().getObject().getUrlDecodedKey();
-            String fileName = s3ObjectKey.split("/")[1];
-            String date = fileName.substring(0,10);
+    private static final long INIT_START = System.nanoTime();
+    private static final AtomicBoolean FIRST_INVOCATION = new AtomicBoolean(true);
+    // Sales objects of an event are fetched and parsed at once, as most of the time is spent waiting for S3
+    private static final ForkJoinPool INGESTION_POOL = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors(), 10));
+    private static boolean primed;
+    private static final String PRIMING_SALES = String.join(";", "Date_Time", "Store", "Product", "Quantity",
+            "Unit_Price", "Unit_Cost", "Unit_Profit", "Total_Price") + "\n2022-10-01 00:00:00;store;product;1;1.00;0.50;0.50;1.00\n";
 
-            S3DownloadObject.downloadObject(bucketName, s3ObjectKey, WORKERFOLDER_SALES + fileName);
+    static {
+        // Clients are built and classes are loaded during the init phase of the function, not by the first invocation
+        prime();
+        System.out.printf("[Worker] Initialized in %d ms%n", (System.nanoTime() - INIT_START) / 1_000_000);
+    }
 
-            // Parse sales file
-            SaleSummary summary = SaleSummary.parseSales(bucketName, s3ObjectKey);
+    public Void handleRequest(S3Event event, Context context) {
+        long start = System.nanoTime();
+        // Every object of the notification is summarized, as 'bucket:key' like the messages of the INBOX queue
+        Set<String> objects = new LinkedHashSet<>();
+        for (S3EventNotification.S3EventNotificationRecord notificationRecord : event.getRecords())
+            objects.add(notificationRecord.getS3().getBucket().getName() + ':' + notificationRecord.getS3().getObject().getUrlDecodedKey());
 
-            // Update summary on the Worker once all available files downloaded
-            updateSummary(summary, date);
+        Map<String, ForkJoinTask<SaleSummary>> summaries = ingestSales(objects);
+        // Summaries are only updated if every object is parsed, so that a retried event is not counted twice
+        for (ForkJoinTask<SaleSummary> summary : summaries.values())
+            if (summary.isCompletedAbnormally())
+                throw new RuntimeException(summary.getException());
+        Set<String> failedObjects = updateSummaries(summaries);
+        logInvocation(start);
+        // A retried event counts again the objects of the dates already updated, an event notification cannot tell
+        // which of its objects failed
+        if (!failedObjects.isEmpty())
+            throw new RuntimeException("Could not update the summaries of " + failedObjects);
+        return null;
+    }
 
-            String[] files = new File(WORKERFOLDER_SUMMARY).list();
-            if (files != null)
-                for (String file : files)
-                    S3UploadObject.uploadObject(BUCKETNAME, WORKERFOLDER_SUMMARY + file, S3PATHFOLDER_SUMMARY + file, true);
-        } catch (Exception e) {
+    /**
+     * Builds the S3 client and loads the classes of the S3 requests, of the sales parser and of the summaries, so that
+     * a snapshot of the initialized function already holds them. Does nothing after the first call.
+     */
+    static synchronized void prime() {
+        if (primed)
+            return;
+        primed = true;
+        try {
+            // A request to the bucket loads the marshallers, the signer and the HTTP client of the SDK
+            AwsResolver.bucketExists(BUCKETNAME);
+        } catch (SdkException e) {
+            System.err.println("[Worker] Could not prime the S3 client: " + e.getMessage());
+        }
+        try {
+            SaleSummary summary = SaleSummary.parseSales(new ByteArrayInputStream(PRIMING_SALES.getBytes(StandardCharsets.UTF_8)));
+            new SaleSummary().merge(summary);
+            SaleSummary.updateSummaryByStore(summary, null);
+            SaleSummary.updateSummaryByProduct(summary, null);
+            Product.parseProducts("Product;Total_Profit;Total_Quantity;Total_Sold\nproduct;0.50$;1 units;\"1$\";\n");
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return null;
     }
 
-//    private static void uploadSummary() {
-//        String[] filenames = new File(WORKERFOLDER_SUMMARY).list();
-//        List<File> files = null;
-//        if (filenames != null)
-//            for (String filename : filenames)
-//                files.add(new File(WORKERFOLDER_SUMMARY +filename), S3PATHFOLDER_SUMMARY+filename)
-//    }
+    /**
+     * Logs the duration of an invocation, telling the first invocation of the execution environment apart.
+     *
+     * @param start Start of the invocation, from {@link System#nanoTime()}
+     */
+    static void logInvocation(long start) {
+        System.out.printf("[Worker] %s invocation in %d ms%n", FIRST_INVOCATION.getAndSet(false) ? "First" : "Warm",
+                (System.nanoTime() - start) / 1_000_000);
+    }
 
-    private static void updateSummary(SaleSummary summary, String date) {
-        String productSummaryFile = WORKERFOLDER_SUMMARY + date + '-' + WORKER_PRODUCT_SUMMARY;
-        // Update summary by store
-        SaleSummary.updateSummaryByStore(summary, "%s%s-%s".formatted(WORKERFOLDER_SUMMARY, date, WORKER_STORE_SUMMARY));
-        // Parse current stats on products
-        Set<Product> product = Product.parseProducts(productSummaryFile);
-        // Update summary by products
-        SaleSummary.updateSummaryByProduct(summary, "%s%s-%s".formatted(WORKERFOLDER_SUMMARY, date, WORKER_PRODUCT_SUMMARY),
-                product);
+    /**
+     * Downloads and parses sales objects in parallel.
+     *
+     * @param objects Sales objects, as 'bucket:key'
+     * @return the completed parsing of each object, which holds its summary or its failure
+     */
+    static Map<String, ForkJoinTask<SaleSummary>> ingestSales(Collection<String> objects) {
+        Map<String, ForkJoinTask<SaleSummary>> summaries = new LinkedHashMap<>();
+        for (String object : objects) {
+            String bucketName = object.split(":")[0];
+            String s3ObjectKey = object.split(":")[1];
+            // Parse sales file, streamed from S3 into the parser
+            summaries.put(object, ForkJoinTask.adapt(() -> SaleSummary.parseSales(bucketName, s3ObjectKey)));
+        }
+        // Failures are kept in their task, so that the other objects are still parsed
+        INGESTION_POOL.submit(() -> summaries.values().forEach(ForkJoinTask::fork)).join();
+        for (ForkJoinTask<SaleSummary> summary : summaries.values())
+            summary.quietlyJoin();
+        return summaries;
+    }
 
+    /**
+     * Merges the summaries of the parsed objects by date, and updates the summaries of each date once on S3. Objects
+     * whose parsing failed are left out. A date whose update fails does not stop the update of the next dates.
+     *
+     * @param summaries The completed parsing of each sales object, as 'bucket:key'
+     * @return the objects of the dates whose summaries could not be updated
+     */
+    static Set<String> updateSummaries(Map<String, ForkJoinTask<SaleSummary>> summaries) {
+        Map<String, SaleSummary> summariesByDate = new TreeMap<>();
+        Map<String, List<String>> objectsByDate = new HashMap<>();
+        for (Map.Entry<String, ForkJoinTask<SaleSummary>> summary : summaries.entrySet()) {
+            if (summary.getValue().isCompletedAbnormally())
+                continue;
+            // Parse dates from file names 'bucket:sales/01-10-2022-store1.csv' => '01-10-2022'
+            String fileName = summary.getKey().split("/")[1];
+            String date = fileName.substring(0, 10);
+            summariesByDate.computeIfAbsent(date, key -> new SaleSummary()).merge(summary.getValue().join());
+            objectsByDate.computeIfAbsent(date, key -> new ArrayList<>()).add(summary.getKey());
+        }
+
+        // Update summary of the dates of the parsed files only, once all available files parsed
+        Set<String> failedObjects = new LinkedHashSet<>();
+        summariesByDate.forEach((date, summary) -> {
+            try {
+                updateSummary(summary, date);
+            } catch (RuntimeException e) {
+                System.err.println("[Worker] Could not update the summaries of " + date + ": " + e);
+                failedObjects.addAll(objectsByDate.get(date));
+            }
+        });
+        return failedObjects;
+    }
 
+    private static void updateSummary(SaleSummary summary, String date) {
+        // Summaries are read from S3, updated in memory and uploaded back, without going through the disk. This
+        // read-modify-write is not atomic: two invocations updating the same date at once read the same summary, and
+        // the last upload drops the sales of the other one. The function must not run concurrently on the same dates,
+        // for instance with a reserved concurrency of 1, for the totals to be exact.
+        String storeSummaryKey = S3PATHFOLDER_SUMMARY + date + '-' + WORKER_STORE_SUMMARY;
+        String productSummaryKey = S3PATHFOLDER_SUMMARY + date + '-' + WORKER_PRODUCT_SUMMARY;
+        // Both summaries are read before any is uploaded, so that only a failure of the last upload leaves the store
+        // summary updated, and the files of the date counted twice in it once they are summarized again
+        String storeSummary = S3DownloadObject.readObject(BUCKETNAME, storeSummaryKey);
+        String productSummary = S3DownloadObject.readObject(BUCKETNAME, productSummaryKey);
+        // Update summary by store
+        S3UploadObject.uploadBytes(BUCKETNAME, storeSummaryKey, SaleSummary.updateSummaryByStore(summary, storeSummary));
+        // Update summary by products, merged into the current stats on products
+        S3UploadObject.uploadBytes(BUCKETNAME, productSummaryKey, SaleSummary.updateSummaryByProduct(summary, productSummary));
     }
 }
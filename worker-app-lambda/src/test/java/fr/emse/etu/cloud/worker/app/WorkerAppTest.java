@@ -0,0 +1,226 @@
+package fr.emse.etu.cloud.worker.app;
+
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Invokes the handler on S3 event notifications of the data files, against an in-memory stand-in of S3, and checks
+ * the summaries it uploads against totals computed from every record with commons-csv and exact decimals.
+ */
+class WorkerAppTest {
+    private static final Path DATA_FOLDER = Path.of("../data");
+    private static final String DATE = "01-10-2022";
+    private static final List<String> FILES = List.of(DATE + "-store1.csv", DATE + "-store2.csv");
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.builder()
+            .setDelimiter(';')
+            .setHeader()
+            .setSkipHeaderRecord(true)
+            .build();
+    private static final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private static final Set<String> failingUploads = ConcurrentHashMap.newKeySet();
+    private static final HttpServer s3 = startS3();
+
+    @AfterAll
+    static void stopS3() {
+        s3.stop(0);
+    }
+
+    @Test
+    void handlerSummarizesTheObjectsOfAnEventAndAddsThemToThePreviousSummaries() throws IOException {
+        for (String file : FILES)
+            objects.put(WorkerApp.BUCKETNAME + "/sales/" + file, Files.readAllBytes(DATA_FOLDER.resolve(file)));
+        Map<String, BigDecimal> storeProfits = new TreeMap<>();
+        Map<String, BigDecimal> productProfits = new TreeMap<>();
+        Map<String, Integer> productQuantities = new HashMap<>();
+        Map<String, Integer> productSold = new HashMap<>();
+        for (String file : FILES) {
+            try (Reader reader = Files.newBufferedReader(DATA_FOLDER.resolve(file))) {
+                for (CSVRecord record : CSV_FORMAT.parse(reader)) {
+                    String product = record.get("Product");
+                    int quantity = Integer.parseInt(record.get("Quantity"));
+                    storeProfits.merge(record.get("Store"), new BigDecimal(record.get("Unit_Price")), BigDecimal::add);
+                    productProfits.merge(product, new BigDecimal(record.get("Unit_Profit"))
+                            .multiply(BigDecimal.valueOf(quantity)), BigDecimal::add);
+                    productQuantities.merge(product, quantity, Integer::sum);
+                    productSold.merge(product, 1, Integer::sum);
+                }
+            }
+        }
+
+        S3Event event = event(FILES);
+        new WorkerApp().handleRequest(event, null);
+
+        Map<String, String> stores = readSummary(WorkerApp.WORKER_STORE_SUMMARY, "Store;Total_Profit;");
+        assertEquals(storeProfits.size(), stores.size());
+        storeProfits.forEach((store, profit) -> assertEquals(profit.setScale(2) + "$;", stores.get(store), store));
+        Map<String, String> products = readSummary(WorkerApp.WORKER_PRODUCT_SUMMARY, "Product;Total_Profit;Total_Quantity;Total_Sold");
+        assertEquals(productProfits.keySet(), products.keySet());
+        for (String product : productProfits.keySet()) {
+            Product totals = Product.parseProducts(product + ';' + products.get(product)).get(product);
+            assertEquals(productProfits.get(product).movePointRight(2).longValueExact(), totals.totalProfit(), product);
+            assertEquals(productQuantities.get(product), totals.totalQuantity(), product);
+            assertEquals(productSold.get(product), (int) totals.totalSold(), product);
+        }
+
+        // A second event adds its sales to the summaries of the first one
+        new WorkerApp().handleRequest(event, null);
+
+        for (String product : productProfits.keySet()) {
+            Product totals = Product.parseProducts(new String(objects.get(summaryKey(WorkerApp.WORKER_PRODUCT_SUMMARY)),
+                    StandardCharsets.UTF_8)).get(product);
+            assertEquals(productProfits.get(product).movePointRight(2).longValueExact() * 2, totals.totalProfit(), product);
+            assertEquals(productQuantities.get(product) * 2, totals.totalQuantity(), product);
+        }
+    }
+
+    @Test
+    void sqsHandlerReportsOnlyTheMessagesOfFilesNotInTheUploadedSummaries() throws IOException {
+        // Dates of their own, as the summaries are kept by the stand-in between the tests
+        byte[] sales = Files.readAllBytes(DATA_FOLDER.resolve("02-10-2022-store1.csv"));
+        objects.put(WorkerApp.BUCKETNAME + "/sales/10-10-2022-store1.csv", sales);
+        objects.put(WorkerApp.BUCKETNAME + "/sales/11-10-2022-store1.csv", sales);
+        failingUploads.add(WorkerApp.BUCKETNAME + '/' + WorkerApp.S3PATHFOLDER_SUMMARY + "11-10-2022-" + WorkerApp.WORKER_PRODUCT_SUMMARY);
+
+        List<SQSEvent.SQSMessage> messages = new ArrayList<>();
+        for (String file : List.of("10-10-2022-store1.csv", "11-10-2022-store1.csv", "10-10-2022-missing.csv")) {
+            SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+            message.setMessageId("id-" + file);
+            message.setBody(WorkerApp.BUCKETNAME + ":sales/" + file);
+            messages.add(message);
+        }
+        SQSEvent event = new SQSEvent();
+        event.setRecords(messages);
+        SQSBatchResponse response = new SQSWorkerApp().handleRequest(event, null);
+
+        // The message of the uploaded date is not delivered again, unlike the ones of the failed date and missing file
+        Set<String> failures = new TreeSet<>();
+        for (SQSBatchResponse.BatchItemFailure failure : response.getBatchItemFailures())
+            failures.add(failure.getItemIdentifier());
+        assertEquals(new TreeSet<>(List.of("id-10-10-2022-missing.csv", "id-11-10-2022-store1.csv")), failures);
+        assertNotNull(objects.get(WorkerApp.BUCKETNAME + '/' + WorkerApp.S3PATHFOLDER_SUMMARY + "10-10-2022-" + WorkerApp.WORKER_PRODUCT_SUMMARY));
+    }
+
+    private static S3Event event(List<String> files) {
+        List<S3EventNotification.S3EventNotificationRecord> records = new ArrayList<>();
+        for (String file : files) {
+            S3EventNotification.S3BucketEntity bucket = new S3EventNotification.S3BucketEntity(WorkerApp.BUCKETNAME, null, null);
+            S3EventNotification.S3ObjectEntity s3Object = new S3EventNotification.S3ObjectEntity("sales/" + file, 0L, null, null, null);
+            records.add(new S3EventNotification.S3EventNotificationRecord(null, "ObjectCreated:Put", "aws:s3", null, null,
+                    null, null, new S3EventNotification.S3Entity(null, bucket, s3Object, null), null));
+        }
+        return new S3Event(records);
+    }
+
+    private static String summaryKey(String summary) {
+        return WorkerApp.BUCKETNAME + '/' + WorkerApp.S3PATHFOLDER_SUMMARY + DATE + '-' + summary;
+    }
+
+    /**
+     * @return the values of a summary uploaded as CSV, by key
+     */
+    private static Map<String, String> readSummary(String summary, String header) {
+        byte[] content = objects.get(summaryKey(summary));
+        assertNotNull(content, summary + " was not uploaded");
+        List<String> lines = new String(content, StandardCharsets.UTF_8).lines().toList();
+        assertEquals(header, lines.get(0));
+        Map<String, String> values = new TreeMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            int separator = line.indexOf(';');
+            assertNull(values.put(line.substring(0, separator), line.substring(separator + 1)), line);
+        }
+        return values;
+    }
+
+    /**
+     * Starts a stand-in of S3 which keeps objects in memory, and points the clients to it. It must be started before
+     * the clients are built, when the handler class is initialized.
+     */
+    private static HttpServer startS3() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/", WorkerAppTest::handleS3);
+            server.start();
+            System.setProperty("clients.endpoint", "http://localhost:" + server.getAddress().getPort());
+            System.setProperty("aws.region", "us-east-1");
+            System.setProperty("aws.accessKeyId", "test");
+            System.setProperty("aws.secretAccessKey", "test");
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void handleS3(HttpExchange exchange) throws IOException {
+        // Path-style requests: /bucket for the bucket, /bucket/key for its objects
+        String path = exchange.getRequestURI().getPath().substring(1);
+        switch (exchange.getRequestMethod()) {
+            case "PUT" -> {
+                byte[] content = decodeBody(exchange);
+                if (failingUploads.contains(path)) {
+                    exchange.sendResponseHeaders(403, -1);
+                } else {
+                    objects.put(path, content);
+                    exchange.sendResponseHeaders(200, -1);
+                }
+            }
+            case "HEAD" -> exchange.sendResponseHeaders(path.equals(WorkerApp.BUCKETNAME) ? 200 : 404, -1);
+            case "GET" -> {
+                byte[] content = objects.get(path);
+                if (content == null) {
+                    content = "<Error><Code>NoSuchKey</Code><Message>Not found</Message></Error>".getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(404, content.length);
+                } else
+                    exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+            }
+            default -> exchange.sendResponseHeaders(405, -1);
+        }
+        exchange.close();
+    }
+
+    /**
+     * @return the content of an uploaded object, decoded if it was sent in signed chunks
+     */
+    private static byte[] decodeBody(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if (encoding == null || !encoding.contains("aws-chunked"))
+            return body;
+        // Chunks are "<hex size>;chunk-signature=...\r\n<data>\r\n", until a chunk of size 0
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        int position = 0;
+        while (true) {
+            int headerEnd = position;
+            while (body[headerEnd] != '\r')
+                headerEnd++;
+            String header = new String(body, position, headerEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";")[0], 16);
+            if (size == 0)
+                return content.toByteArray();
+            content.write(body, headerEnd + 2, size);
+            position = headerEnd + 2 + size + 2;
+        }
+    }
+}